@@ -0,0 +1,153 @@
+package com.routemaster.batch;
+
+import com.routemaster.model.RouteLog;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+/**
+ * Computes the per-route numbers of the analytics job in one pass over a route's points.
+ * The points are first unpacked into primitive columns, converting timestamps to epoch millis
+ * once, so the pass itself reads only double[] and long[] values. Distance uses the Haversine
+ * formula with each point's radians and cos(latitude) computed once and carried forward to the
+ * next segment.
+ */
+public final class RouteAnalyticsKernel {
+
+    private static final double EARTH_RADIUS_KM = 6371;
+
+    // A segment counts as moving time when its average speed is at least this
+    private static final double MOVING_SPEED_KMH = 2.0;
+
+    // Column value of a missing timestamp; missing doubles are NaN
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private RouteAnalyticsKernel() {
+    }
+
+    public static Result compute(List<RouteLog.LocationPoint> locations) {
+        return compute(Columns.of(locations));
+    }
+
+    public static Result compute(Columns columns) {
+        double[] latitudes = columns.latitudes;
+        double[] longitudes = columns.longitudes;
+        double[] speeds = columns.speeds;
+        long[] millis = columns.millis;
+        int count = columns.count;
+
+        double distance = 0;
+        double speedSum = 0;
+        int speedCount = 0;
+        double maxSpeed = 0;
+        long movingMillis = 0;
+
+        boolean hasPrevious = false;
+        double prevLat = 0;
+        double prevLon = 0;
+        double prevCosLat = 0;
+        long prevMillis = NO_TIME;
+
+        for (int i = 0; i < count; i++) {
+            double speed = speeds[i];
+            if (speed == speed) {
+                speedSum += speed;
+                speedCount++;
+                if (speedCount == 1 || speed > maxSpeed) {
+                    maxSpeed = speed;
+                }
+            }
+
+            double latitude = latitudes[i];
+            double longitude = longitudes[i];
+            if (latitude != latitude || longitude != longitude) {
+                continue;
+            }
+            double lat = Math.toRadians(latitude);
+            double lon = Math.toRadians(longitude);
+            double cosLat = Math.cos(lat);
+            long time = millis[i];
+
+            if (hasPrevious) {
+                double sinLat = Math.sin((lat - prevLat) / 2);
+                double sinLon = Math.sin((lon - prevLon) / 2);
+                double a = sinLat * sinLat + prevCosLat * cosLat * sinLon * sinLon;
+                double segment = EARTH_RADIUS_KM * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+                distance += segment;
+
+                long elapsed = time - prevMillis;
+                if (time != NO_TIME && prevMillis != NO_TIME && elapsed > 0
+                        && segment * 3_600_000 >= MOVING_SPEED_KMH * elapsed) {
+                    movingMillis += elapsed;
+                }
+            }
+            hasPrevious = true;
+            prevLat = lat;
+            prevLon = lon;
+            prevCosLat = cosLat;
+            prevMillis = time;
+        }
+
+        boolean hasDuration = count > 1 && millis[0] != NO_TIME && millis[count - 1] != NO_TIME;
+        return new Result(
+                distance,
+                speedCount > 0 ? speedSum / speedCount : 0.0,
+                maxSpeed,
+                hasDuration ? (millis[count - 1] - millis[0]) / 60_000 : null,
+                movingMillis / 60_000);
+    }
+
+    // Millisecond precision like the stored dates, without creating an Instant per point
+    private static long epochMillis(LocalDateTime timestamp) {
+        return timestamp.toEpochSecond(ZoneOffset.UTC) * 1000 + timestamp.getNano() / 1_000_000;
+    }
+
+    /**
+     * A route's points as primitive columns: a missing coordinate or speed is NaN and a missing
+     * timestamp is Long.MIN_VALUE.
+     */
+    public static final class Columns {
+
+        private final double[] latitudes;
+        private final double[] longitudes;
+        private final double[] speeds;
+        private final long[] millis;
+        private final int count;
+
+        private Columns(int count) {
+            this.latitudes = new double[count];
+            this.longitudes = new double[count];
+            this.speeds = new double[count];
+            this.millis = new long[count];
+            this.count = count;
+        }
+
+        public static Columns of(List<RouteLog.LocationPoint> locations) {
+            Columns columns = new Columns(locations.size());
+            for (int i = 0; i < columns.count; i++) {
+                RouteLog.LocationPoint point = locations.get(i);
+                columns.latitudes[i] = point.getLatitude() != null ? point.getLatitude() : Double.NaN;
+                columns.longitudes[i] = point.getLongitude() != null ? point.getLongitude() : Double.NaN;
+                columns.speeds[i] = point.getSpeed() != null ? point.getSpeed() : Double.NaN;
+                columns.millis[i] = point.getTimestamp() != null ? epochMillis(point.getTimestamp()) : NO_TIME;
+            }
+            return columns;
+        }
+    }
+
+    /**
+     * @param totalDistance         km
+     * @param averageSpeed          mean of the recorded speeds in km/h, 0 without any
+     * @param maxSpeed              km/h, 0 without any recorded speed
+     * @param totalDurationMinutes  first to last point, null with fewer than two timed points
+     * @param movingDurationMinutes time spent in segments at walking pace or faster
+     */
+    public record Result(
+            double totalDistance,
+            double averageSpeed,
+            double maxSpeed,
+            Long totalDurationMinutes,
+            long movingDurationMinutes) {
+    }
+}
@@ -0,0 +1,52 @@
+package com.routemaster.batch;
+
+import com.routemaster.model.RouteAnalytics;
+import com.routemaster.model.RouteLog;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+
+/**
+ * Turns one route log into its analytics with {@link RouteAnalyticsKernel}.
+ * Used by the batch job and, as the reference, by the pushdown comparison. Routes without
+ * points get no distance, speed or duration fields.
+ */
+@Component
+@Slf4j
+public class RouteAnalyticsProcessor implements ItemProcessor<RouteLog, RouteAnalytics> {
+
+    @Override
+    public RouteAnalytics process(RouteLog routeLog) {
+        RouteAnalytics analytics = new RouteAnalytics();
+        analytics.setRouteId(routeLog.getRouteId());
+        analytics.setDriverId(routeLog.getDriverId());
+        analytics.setVehicleId(routeLog.getVehicleId());
+        analytics.setDate(routeLog.getDate());
+
+        if (routeLog.getLocations() != null && !routeLog.getLocations().isEmpty()) {
+            // Distance, speeds and durations in one pass over the points
+            RouteAnalyticsKernel.Result result = RouteAnalyticsKernel.compute(routeLog.getLocations());
+            analytics.setTotalDistance(result.totalDistance());
+            analytics.setAverageSpeed(result.averageSpeed());
+            analytics.setMaxSpeed(result.maxSpeed());
+            analytics.setTotalDurationMinutes(result.totalDurationMinutes());
+            analytics.setMovingDurationMinutes(result.movingDurationMinutes());
+
+            // Estimate fuel efficiency (simplified formula)
+            if (result.totalDistance() > 0 && result.averageSpeed() > 0) {
+                analytics.setFuelEfficiency(result.totalDistance() / (result.averageSpeed() * 0.1)); // Simplified
+            }
+        }
+
+        analytics.setTotalStops(0); // Would need additional logic
+        analytics.setDeliveriesCompleted(0); // Would need parcel data
+        analytics.setDeliveriesFailed(0);
+        analytics.setProcessedAt(LocalDateTime.now());
+
+        log.debug("Processed route log: {} -> avg speed: {}", routeLog.getRouteId(), analytics.getAverageSpeed());
+
+        return analytics;
+    }
+}
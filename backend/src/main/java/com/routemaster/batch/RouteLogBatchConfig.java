@@ -1,188 +1,194 @@
 package com.routemaster.batch;
 
+import com.mongodb.bulk.BulkWriteResult;
+import com.routemaster.config.RouteAnalyticsIndexMigration;
 import com.routemaster.model.RouteAnalytics;
 import com.routemaster.model.RouteLog;
-import com.routemaster.repository.RouteAnalyticsRepository;
+import com.routemaster.service.RouteAnalyticsAggregationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.job.builder.JobBuilder;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.step.builder.StepBuilder;
-import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.core.step.tasklet.Tasklet;
 import org.springframework.batch.item.ItemWriter;
-import org.springframework.batch.item.data.RepositoryItemReader;
-import org.springframework.batch.item.data.builder.RepositoryItemReaderBuilder;
-import com.routemaster.repository.RouteLogRepository;
+import org.springframework.batch.repeat.RepeatStatus;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.annotation.Bean;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.data.domain.Sort;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
 
 import org.springframework.transaction.PlatformTransactionManager;
 
 import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.List;
 
 @Configuration
 @RequiredArgsConstructor
 @Slf4j
 public class RouteLogBatchConfig {
 
-    private final RouteLogRepository routeLogRepository;
-    private final RouteAnalyticsRepository routeAnalyticsRepository;
+    private final MongoTemplate mongoTemplate;
+    private final RouteAnalyticsAggregationService routeAnalyticsAggregationService;
+    private final RouteAnalyticsIndexMigration routeAnalyticsIndexMigration;
+    private final RouteAnalyticsProcessor routeAnalyticsProcessor;
 
     @Value("${app.batch.route-log-processor.chunk-size:1000}")
     private int chunkSize;
 
+    @Value("${app.batch.route-log-processor.thread-count:4}")
+    private int threadCount;
+
+    @Value("${app.batch.route-log-processor.read-page-size:1000}")
+    private int readPageSize;
+
     /**
-     * Reader: Read route logs from H2 database using JPA
+     * Partitioner: Split the day's route logs by driverId hash
      */
     @Bean
-    public RepositoryItemReader<RouteLog> routeLogReader() {
-        Map<String, Sort.Direction> sorts = new HashMap<>();
-        sorts.put("id", Sort.Direction.ASC);
-
-        return new RepositoryItemReaderBuilder<RouteLog>()
-                .name("routeLogReader")
-                .repository(routeLogRepository)
-                .methodName("findByDate")
-                .arguments(LocalDate.now().minusDays(1)) // Yesterday's logs
-                .sorts(sorts)
-                .build();
+    @JobScope
+    public RouteLogPartitioner routeLogPartitioner(@Value("#{jobParameters['date']}") String date) {
+        return new RouteLogPartitioner(mongoTemplate, jobDate(date));
     }
 
     /**
-     * Processor: Calculate analytics from route logs
+     * Reader: Stream one partition's route logs from MongoDB in _id keyset pages
      */
     @Bean
-    public ItemProcessor<RouteLog, RouteAnalytics> routeLogProcessor() {
-        return routeLog -> {
-            RouteAnalytics analytics = new RouteAnalytics();
-            analytics.setRouteId(routeLog.getRouteId());
-            analytics.setDriverId(routeLog.getDriverId());
-            analytics.setVehicleId(routeLog.getVehicleId());
-            analytics.setDate(routeLog.getDate());
-
-            if (routeLog.getLocations() != null && !routeLog.getLocations().isEmpty()) {
-                // Calculate total distance
-                double totalDistance = calculateTotalDistance(routeLog.getLocations());
-                analytics.setTotalDistance(totalDistance);
-
-                // Calculate average speed
-                double avgSpeed = routeLog.getLocations().stream()
-                        .filter(loc -> loc.getSpeed() != null)
-                        .mapToDouble(RouteLog.LocationPoint::getSpeed)
-                        .average()
-                        .orElse(0.0);
-                analytics.setAverageSpeed(avgSpeed);
-
-                // Calculate max speed
-                double maxSpeed = routeLog.getLocations().stream()
-                        .filter(loc -> loc.getSpeed() != null)
-                        .mapToDouble(RouteLog.LocationPoint::getSpeed)
-                        .max()
-                        .orElse(0.0);
-                analytics.setMaxSpeed(maxSpeed);
-
-                // Calculate duration
-                if (routeLog.getLocations().size() > 1) {
-                    LocalDateTime start = routeLog.getLocations().get(0).getTimestamp();
-                    LocalDateTime end = routeLog.getLocations().get(routeLog.getLocations().size() - 1).getTimestamp();
-                    long durationMinutes = java.time.Duration.between(start, end).toMinutes();
-                    analytics.setTotalDurationMinutes(durationMinutes);
-                }
-
-                // Estimate fuel efficiency (simplified formula)
-                if (totalDistance > 0 && avgSpeed > 0) {
-                    analytics.setFuelEfficiency(totalDistance / (avgSpeed * 0.1)); // Simplified
-                }
-            }
-
-            analytics.setTotalStops(0); // Would need additional logic
-            analytics.setDeliveriesCompleted(0); // Would need parcel data
-            analytics.setDeliveriesFailed(0);
-            analytics.setProcessedAt(LocalDateTime.now());
-
-            log.debug("Processed route log: {} -> avg speed: {}", routeLog.getRouteId(), analytics.getAverageSpeed());
-
-            return analytics;
-        };
+    @StepScope
+    public RouteLogKeysetReader routeLogReader(
+            @Value("#{stepExecutionContext['date']}") String date,
+            @Value("#{stepExecutionContext['driverIds']}") List<String> driverIds) {
+        return new RouteLogKeysetReader(mongoTemplate, LocalDate.parse(date), driverIds, readPageSize);
     }
 
     /**
-     * Writer: Write analytics to PostgreSQL
+     * Writer: Upsert the chunk's analytics keyed on (routeId, date) in one unordered bulk write,
+     * so reruns and backfills replace a route's result instead of adding another
      */
     @Bean
     public ItemWriter<RouteAnalytics> routeAnalyticsWriter() {
-        return items -> {
-            routeAnalyticsRepository.saveAll(items);
-            log.info("Wrote {} route analytics records to PostgreSQL", items.size());
+        return chunk -> {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, RouteAnalytics.class);
+            for (RouteAnalytics analytics : chunk) {
+                bulkOps.replaceOne(
+                        Query.query(Criteria.where("routeId").is(analytics.getRouteId()).and("date").is(analytics.getDate())),
+                        analytics,
+                        FindAndReplaceOptions.options().upsert());
+            }
+            BulkWriteResult result = bulkOps.execute();
+            log.info("Upserted {} route analytics records ({} new, {} replaced)",
+                    chunk.size(), result.getUpserts().size(), result.getMatchedCount());
         };
     }
 
     /**
-     * Step: Process route logs
+     * Worker step: Process the route logs of one partition
      */
     @Bean
-    public Step processRouteLogsStep(JobRepository jobRepository, PlatformTransactionManager transactionManager) {
-        return new StepBuilder("processRouteLogsStep", jobRepository)
+    public Step processRouteLogsPartitionStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+                                              RouteLogKeysetReader routeLogReader) {
+        return new StepBuilder("processRouteLogsPartitionStep", jobRepository)
                 .<RouteLog, RouteAnalytics>chunk(chunkSize, transactionManager)
-                .reader(routeLogReader())
-                .processor(routeLogProcessor())
+                .reader(routeLogReader)
+                .processor(routeAnalyticsProcessor)
                 .writer(routeAnalyticsWriter())
                 .build();
     }
 
     /**
-     * Job: Route log processing job
+     * Partition handler: Run up to thread-count partitions at once, on virtual threads in virtual-thread mode
      */
     @Bean
-    public Job routeLogProcessingJob(JobRepository jobRepository, PlatformTransactionManager transactionManager) {
-        return new JobBuilder("routeLogProcessingJob", jobRepository)
-                .incrementer(new RunIdIncrementer())
-                .start(processRouteLogsStep(jobRepository, transactionManager))
-                .build();
+    public TaskExecutorPartitionHandler routeLogPartitionHandler(Step processRouteLogsPartitionStep, Environment environment) {
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("route-log-partition-");
+        executor.setVirtualThreads(Threading.VIRTUAL.isActive(environment));
+        executor.setConcurrencyLimit(threadCount);
+
+        TaskExecutorPartitionHandler handler = new TaskExecutorPartitionHandler();
+        handler.setStep(processRouteLogsPartitionStep);
+        handler.setTaskExecutor(executor);
+        handler.setGridSize(threadCount);
+        return handler;
     }
 
     /**
-     * Calculate total distance using Haversine formula
+     * Step: Process route logs, partitioned by driver.
+     * Every partition is its own step execution, so a restart only reruns the failed ones.
      */
-    private double calculateTotalDistance(java.util.List<RouteLog.LocationPoint> locations) {
-        double totalDistance = 0.0;
-
-        for (int i = 1; i < locations.size(); i++) {
-            RouteLog.LocationPoint prev = locations.get(i - 1);
-            RouteLog.LocationPoint curr = locations.get(i);
-
-            totalDistance += haversineDistance(
-                    prev.getLatitude(), prev.getLongitude(),
-                    curr.getLatitude(), curr.getLongitude());
-        }
-
-        return totalDistance;
+    @Bean
+    public Step processRouteLogsStep(JobRepository jobRepository, RouteLogPartitioner routeLogPartitioner,
+                                     TaskExecutorPartitionHandler routeLogPartitionHandler) {
+        return new StepBuilder("processRouteLogsStep", jobRepository)
+                .partitioner("processRouteLogsPartitionStep", routeLogPartitioner)
+                .partitionHandler(routeLogPartitionHandler)
+                .build();
     }
 
     /**
-     * Haversine formula for distance between two points (in kilometers)
+     * Step: Compute and merge the day's analytics inside MongoDB
      */
-    private double haversineDistance(double lat1, double lon1, double lat2, double lon2) {
-        final int R = 6371; // Earth's radius in km
+    @Bean
+    public Step aggregateRouteAnalyticsStep(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+                                            Tasklet aggregateRouteAnalyticsTasklet) {
+        return new StepBuilder("aggregateRouteAnalyticsStep", jobRepository)
+                .tasklet(aggregateRouteAnalyticsTasklet, transactionManager)
+                .build();
+    }
 
-        double latDistance = Math.toRadians(lat2 - lat1);
-        double lonDistance = Math.toRadians(lon2 - lon1);
+    @Bean
+    @StepScope
+    public Tasklet aggregateRouteAnalyticsTasklet(@Value("#{jobParameters['date']}") String date) {
+        return (contribution, chunkContext) -> {
+            // $merge needs the unique index; fail the step with a clear message when it is gone
+            routeAnalyticsIndexMigration.requireIndex();
+            routeAnalyticsAggregationService.mergeDay(jobDate(date));
+            return RepeatStatus.FINISHED;
+        };
+    }
 
-        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-                        * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
+    /**
+     * Job: Route analytics computed by an aggregation pipeline instead of the processor
+     */
+    @Bean
+    public Job routeAnalyticsAggregationJob(JobRepository jobRepository, Step aggregateRouteAnalyticsStep) {
+        return new JobBuilder("routeAnalyticsAggregationJob", jobRepository)
+                .incrementer(new RunIdIncrementer())
+                .start(aggregateRouteAnalyticsStep)
+                .build();
+    }
 
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    /**
+     * Job: Route log processing job
+     */
+    @Bean
+    public Job routeLogProcessingJob(JobRepository jobRepository, Step processRouteLogsStep) {
+        return new JobBuilder("routeLogProcessingJob", jobRepository)
+                .incrementer(new RunIdIncrementer())
+                .start(processRouteLogsStep)
+                .build();
+    }
 
-        return R * c;
+    /**
+     * The day a job processes: the "date" job parameter (ISO date), yesterday when absent
+     */
+    private static LocalDate jobDate(String date) {
+        return date != null ? LocalDate.parse(date) : LocalDate.now().minusDays(1);
     }
 }
@@ -0,0 +1,88 @@
+package com.routemaster.batch;
+
+import com.routemaster.model.RouteLog;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reads one day of route logs for a set of drivers in _id order, one page per query.
+ * Each page starts after the last _id returned instead of skipping the documents before it,
+ * so every page costs the same from the first chunk to the last. Only the fields the
+ * analytics processor uses are fetched. The last returned _id is kept in the step's
+ * execution context, so a restarted step continues after the last committed chunk.
+ */
+public class RouteLogKeysetReader implements ItemStreamReader<RouteLog> {
+
+    private static final String LAST_ID_KEY = "routeLogReader.lastId";
+
+    private final MongoTemplate mongoTemplate;
+    private final LocalDate date;
+    private final Collection<String> driverIds;
+    private final int pageSize;
+
+    private Iterator<RouteLog> page = List.<RouteLog>of().iterator();
+    private String lastId;
+    private boolean exhausted;
+
+    public RouteLogKeysetReader(MongoTemplate mongoTemplate, LocalDate date, Collection<String> driverIds, int pageSize) {
+        this.mongoTemplate = mongoTemplate;
+        this.date = date;
+        this.driverIds = driverIds;
+        this.pageSize = pageSize;
+    }
+
+    @Override
+    public RouteLog read() {
+        if (!page.hasNext()) {
+            if (exhausted) {
+                return null;
+            }
+            List<RouteLog> next = mongoTemplate.find(nextPageQuery(), RouteLog.class);
+            exhausted = next.size() < pageSize;
+            page = next.iterator();
+            if (!page.hasNext()) {
+                return null;
+            }
+        }
+        RouteLog routeLog = page.next();
+        lastId = routeLog.getId();
+        return routeLog;
+    }
+
+    private Query nextPageQuery() {
+        Criteria criteria = Criteria.where("date").is(date).and("driverId").in(driverIds);
+        if (lastId != null) {
+            criteria = criteria.and("_id").gt(lastId);
+        }
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, "_id"))
+                .limit(pageSize)
+                .cursorBatchSize(pageSize);
+        query.fields().include("routeId", "driverId", "vehicleId", "date",
+                "locations.timestamp", "locations.longitude", "locations.latitude", "locations.speed");
+        return query;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+        lastId = executionContext.getString(LAST_ID_KEY, null);
+        page = List.<RouteLog>of().iterator();
+        exhausted = false;
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {
+        if (lastId != null) {
+            executionContext.putString(LAST_ID_KEY, lastId);
+        }
+    }
+}
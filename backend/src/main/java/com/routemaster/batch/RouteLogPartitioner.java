@@ -0,0 +1,62 @@
+package com.routemaster.batch;
+
+import com.routemaster.model.RouteLog;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Splits one day of route logs into partitions by driverId hash.
+ * Each partition's context holds the date and the driverIds it owns, so its reader only sees
+ * those drivers' logs and its progress is kept in its own step execution.
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class RouteLogPartitioner implements Partitioner {
+
+    public static final String DATE_KEY = "date";
+    public static final String DRIVER_IDS_KEY = "driverIds";
+
+    private final MongoTemplate mongoTemplate;
+    private final LocalDate date;
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        // Served from the (date, driverId) index
+        List<String> driverIds = mongoTemplate.findDistinct(
+                Query.query(Criteria.where("date").is(date)), "driverId", RouteLog.class, String.class);
+
+        List<List<String>> buckets = new ArrayList<>(gridSize);
+        for (int i = 0; i < gridSize; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        for (String driverId : driverIds) {
+            buckets.get(Math.floorMod(Objects.hashCode(driverId), gridSize)).add(driverId);
+        }
+
+        Map<String, ExecutionContext> partitions = new HashMap<>();
+        for (int i = 0; i < gridSize; i++) {
+            if (buckets.get(i).isEmpty()) {
+                continue;
+            }
+            ExecutionContext context = new ExecutionContext();
+            context.putString(DATE_KEY, date.toString());
+            context.put(DRIVER_IDS_KEY, buckets.get(i));
+            partitions.put("partition" + i, context);
+        }
+
+        log.info("Split {} drivers of {} into {} route log partitions", driverIds.size(), date, partitions.size());
+        return partitions;
+    }
+}
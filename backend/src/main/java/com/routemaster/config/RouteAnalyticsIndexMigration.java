@@ -0,0 +1,102 @@
+package com.routemaster.config;
+
+import com.routemaster.model.RouteAnalytics;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOptions;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Creates the unique (routeId, date) index on route_analytics that both analytics jobs upsert on.
+ * Earlier versions inserted a new result on every job run, so existing data can hold several
+ * results per route and day, on which the index cannot be built. Removing them is destructive
+ * and only runs when app.migrations.route-analytics-dedup.enabled is set: all but the most
+ * recently processed result per route and day are deleted before the index is created.
+ * Startup fails when the index cannot be created, instead of running the jobs without it.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RouteAnalyticsIndexMigration implements CommandLineRunner {
+
+    public static final String INDEX_NAME = "routeId_date";
+
+    private static final int DELETE_BATCH_SIZE = 1000;
+
+    private final MongoTemplate mongoTemplate;
+
+    @Value("${app.migrations.route-analytics-dedup.enabled:false}")
+    private boolean dedupEnabled;
+
+    @Override
+    public void run(String... args) {
+        if (dedupEnabled) {
+            long removed = removeDuplicates();
+            log.warn("Removed {} duplicate route analytics documents", removed);
+        }
+        try {
+            mongoTemplate.indexOps(RouteAnalytics.class).ensureIndex(new Index()
+                    .on("routeId", Sort.Direction.ASC)
+                    .on("date", Sort.Direction.ASC)
+                    .unique()
+                    .named(INDEX_NAME));
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Could not create the unique route analytics index. If route_analytics "
+                    + "holds duplicate (routeId, date) results, start once with "
+                    + "app.migrations.route-analytics-dedup.enabled=true to remove them", e);
+        }
+    }
+
+    /**
+     * Fails when the unique index is missing, e.g. because it was dropped after startup.
+     */
+    public void requireIndex() {
+        boolean present = mongoTemplate.indexOps(RouteAnalytics.class).getIndexInfo().stream()
+                .anyMatch(index -> INDEX_NAME.equals(index.getName()) && index.isUnique());
+        if (!present) {
+            throw new IllegalStateException("The unique route analytics index " + INDEX_NAME + " is missing");
+        }
+    }
+
+    private long removeDuplicates() {
+        Aggregation duplicates = Aggregation.newAggregation(
+                Aggregation.sort(Sort.Direction.DESC, "processedAt"),
+                Aggregation.group("routeId", "date").push("_id").as("ids").count().as("count"),
+                Aggregation.match(Criteria.where("count").gt(1)))
+                .withOptions(AggregationOptions.builder().allowDiskUse(true).build());
+
+        long removed = 0;
+        List<Object> batch = new ArrayList<>();
+        for (Document group : mongoTemplate.aggregate(duplicates, RouteAnalytics.class, Document.class)) {
+            List<?> ids = group.getList("ids", Object.class);
+            // The first id belongs to the most recently processed result, which is kept
+            batch.addAll(ids.subList(1, ids.size()));
+            if (batch.size() >= DELETE_BATCH_SIZE) {
+                removed += delete(batch);
+            }
+        }
+        if (!batch.isEmpty()) {
+            removed += delete(batch);
+        }
+        return removed;
+    }
+
+    private long delete(List<Object> ids) {
+        long deleted = mongoTemplate.remove(Query.query(Criteria.where("_id").in(ids)), RouteAnalytics.class)
+                .getDeletedCount();
+        ids.clear();
+        return deleted;
+    }
+}
@@ -0,0 +1,61 @@
+package com.routemaster.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.batch.core.launch.support.TaskExecutorJobLauncher;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Executors for the opt-in virtual-thread mode (spring.threads.virtual.enabled=true on JDK 21+).
+ * Spring Boot switches Tomcat request handling, @Scheduled tasks and the application task
+ * executor by itself; this class covers what it leaves on platform threads: the batch job
+ * launcher and the WebSocket channel executors (see WebSocketConfig).
+ * The mode is experimental until the platform vs virtual load test in TESTING.md has been run.
+ */
+@Configuration
+@Slf4j
+public class ThreadingConfig {
+
+    /**
+     * Launches batch jobs on a virtual thread in virtual mode, so the admin request returns
+     * once the job has started; otherwise jobs run on the calling thread as before.
+     */
+    @Bean
+    public JobLauncher batchJobLauncher(JobRepository jobRepository, Environment environment) throws Exception {
+        TaskExecutorJobLauncher launcher = new TaskExecutorJobLauncher();
+        launcher.setJobRepository(jobRepository);
+        if (Threading.VIRTUAL.isActive(environment)) {
+            SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("batch-");
+            executor.setVirtualThreads(true);
+            launcher.setTaskExecutor(executor);
+            log.warn("Virtual-thread mode is experimental and not load-tested yet, see TESTING.md");
+            log.info("Batch jobs are launched on virtual threads");
+        } else {
+            launcher.setTaskExecutor(new SyncTaskExecutor());
+        }
+        launcher.afterPropertiesSet();
+        return launcher;
+    }
+
+    /**
+     * Channel executor whose workers are virtual threads.
+     * STOMP channel registration only accepts a ThreadPoolTaskExecutor, so the pool is kept
+     * and only its thread factory changes; idle workers time out instead of being kept.
+     */
+    public static ThreadPoolTaskExecutor virtualChannelExecutor(String threadNamePrefix, int maxThreads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadFactory(new VirtualThreadTaskExecutor(threadNamePrefix).getVirtualThreadFactory());
+        executor.setCorePoolSize(maxThreads);
+        executor.setMaxPoolSize(maxThreads);
+        executor.setAllowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
@@ -1,11 +1,20 @@
 package com.routemaster.config;
 
+import com.routemaster.security.StompAuthChannelInterceptor;
+import com.routemaster.websocket.LocationConflator;
+import com.routemaster.websocket.LocationSessionRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.thread.Threading;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 @Configuration
 @EnableWebSocketMessageBroker
@@ -13,6 +22,26 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     
     @Value("${app.websocket.allowed-origins}")
     private String[] allowedOrigins;
+
+    @Value("${app.websocket.message-size-limit:1048576}")
+    private int messageSizeLimit;
+
+    // Lazy: the conflator needs the outbound channel this configuration helps to build
+    @Autowired
+    @Lazy
+    private LocationConflator locationConflator;
+
+    @Autowired
+    private LocationSessionRegistry locationSessionRegistry;
+
+    @Autowired
+    private StompAuthChannelInterceptor stompAuthChannelInterceptor;
+
+    @Autowired
+    private Environment environment;
+
+    @Value("${app.websocket.virtual-channel-threads:1024}")
+    private int virtualChannelThreads;
     
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
@@ -25,6 +54,9 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         
         // Prefix for user-specific messages
         config.setUserDestinationPrefix("/user");
+
+        // Binary location frames carry deltas, so each session must receive messages in send order
+        config.setPreservePublishOrder(true);
     }
     
     @Override
@@ -38,4 +70,29 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.addEndpoint("/ws")
                 .setAllowedOrigins(allowedOrigins);
     }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // Telemetry batches from driver devices exceed the 64 KB default; other frames are
+        // still held to 64 KB by StompAuthChannelInterceptor
+        registration.setMessageSizeLimit(messageSizeLimit);
+        registration.addDecoratorFactory(locationConflator::decorate);
+        registration.addDecoratorFactory(locationSessionRegistry::decorate);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.interceptors(stompAuthChannelInterceptor);
+        if (Threading.VIRTUAL.isActive(environment)) {
+            registration.taskExecutor(ThreadingConfig.virtualChannelExecutor("ws-inbound-", virtualChannelThreads));
+        }
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        // Outbound workers block while a slow client's socket drains; virtual threads make that cheap
+        if (Threading.VIRTUAL.isActive(environment)) {
+            registration.taskExecutor(ThreadingConfig.virtualChannelExecutor("ws-outbound-", virtualChannelThreads));
+        }
+    }
 }
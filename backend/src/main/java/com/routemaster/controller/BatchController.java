@@ -1,15 +1,19 @@
 package com.routemaster.controller;
 
+import com.routemaster.service.RouteAnalyticsAggregationService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.JobParameters;
 import org.springframework.batch.core.JobParametersBuilder;
 import org.springframework.batch.core.launch.JobLauncher;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
+
 @RestController
 @RequestMapping("/api/admin/batch")
 @RequiredArgsConstructor
@@ -17,17 +21,31 @@ import org.springframework.web.bind.annotation.*;
 @PreAuthorize("hasRole('ADMIN')")
 public class BatchController {
     
-    private final JobLauncher jobLauncher;
+    // Runs on a virtual thread in virtual-thread mode, see ThreadingConfig
+    private final JobLauncher batchJobLauncher;
     private final Job routeLogProcessingJob;
+    private final Job routeAnalyticsAggregationJob;
+    private final RouteAnalyticsAggregationService routeAnalyticsAggregationService;
     
+    /**
+     * JAVA reads the route logs and computes analytics in the batch processor,
+     * PUSHDOWN computes them inside MongoDB with an aggregation pipeline.
+     */
     @PostMapping("/process-route-logs")
-    public ResponseEntity<?> processRouteLogs() {
+    public ResponseEntity<?> processRouteLogs(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(defaultValue = "JAVA") Mode mode) {
         try {
-            JobParameters jobParameters = new JobParametersBuilder()
-                    .addLong("time", System.currentTimeMillis())
-                    .toJobParameters();
+            // The job processes yesterday's logs unless a date is given
+            JobParametersBuilder parameters = new JobParametersBuilder()
+                    .addLong("time", System.currentTimeMillis());
+            if (date != null) {
+                parameters.addString("date", date.toString());
+            }
+            JobParameters jobParameters = parameters.toJobParameters();
             
-            var execution = jobLauncher.run(routeLogProcessingJob, jobParameters);
+            Job job = mode == Mode.PUSHDOWN ? routeAnalyticsAggregationJob : routeLogProcessingJob;
+            var execution = batchJobLauncher.run(job, jobParameters);
             
             log.info("Batch job started: {}", execution.getJobId());
             
@@ -43,5 +61,20 @@ public class BatchController {
         }
     }
     
+    /**
+     * Compute one day's analytics both ways, without writing them, and compare results and runtimes.
+     */
+    @GetMapping("/compare-route-analytics")
+    public ResponseEntity<RouteAnalyticsAggregationService.Comparison> compareRouteAnalytics(
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        return ResponseEntity.ok(routeAnalyticsAggregationService.compare(
+                date != null ? date : LocalDate.now().minusDays(1)));
+    }
+    
+    public enum Mode {
+        JAVA,
+        PUSHDOWN
+    }
+    
     public record BatchResponse(Long jobId, String status, String message) {}
 }
@@ -0,0 +1,26 @@
+package com.routemaster.controller;
+
+import com.routemaster.websocket.LocationSessionRegistry;
+import com.routemaster.websocket.Viewport;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Controller;
+
+@Controller
+@RequiredArgsConstructor
+public class LocationViewportController {
+
+    private final LocationSessionRegistry sessionRegistry;
+
+    @MessageMapping("/locations/viewport")
+    public void updateViewport(@Payload Viewport viewport, SimpMessageHeaderAccessor headerAccessor) {
+        sessionRegistry.setViewport(headerAccessor.getSessionId(), viewport);
+    }
+
+    @MessageMapping("/locations/viewport/clear")
+    public void clearViewport(SimpMessageHeaderAccessor headerAccessor) {
+        sessionRegistry.setViewport(headerAccessor.getSessionId(), null);
+    }
+}
@@ -0,0 +1,43 @@
+package com.routemaster.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Streaming NDJSON responses shared by the controllers.
+ * Writes one JSON document per line while the source stream (usually a Mongo cursor) is read,
+ * so memory use does not depend on the size of the result. The stream is opened when the
+ * response body is written and closed afterwards.
+ */
+@Component
+@RequiredArgsConstructor
+public class NdjsonResponses {
+
+    private final ObjectMapper objectMapper;
+
+    public <T> ResponseEntity<StreamingResponseBody> stream(Supplier<Stream<T>> source) {
+        ObjectWriter writer = objectMapper.writer();
+        StreamingResponseBody body = out -> {
+            try (Stream<T> items = source.get()) {
+                Iterator<T> it = items.iterator();
+                while (it.hasNext()) {
+                    out.write(writer.writeValueAsBytes(it.next()));
+                    out.write('\n');
+                }
+            }
+            out.flush();
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+}
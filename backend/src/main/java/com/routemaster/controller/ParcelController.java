@@ -1,12 +1,20 @@
 package com.routemaster.controller;
 
 import com.routemaster.model.Parcel;
+import com.routemaster.service.ParcelIngestService;
 import com.routemaster.service.ParcelService;
+import com.routemaster.service.ParcelTrackBuffer;
+import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/parcels")
@@ -14,10 +22,29 @@ import java.util.List;
 public class ParcelController {
 
     private final ParcelService parcelService;
+    private final ParcelIngestService parcelIngestService;
+    private final NdjsonResponses ndjsonResponses;
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_NEARBY_LIMIT = 1000;
+
+    /**
+     * Without cursor/limit the full list is returned as before; with either of them the
+     * response is a keyset page whose nextCursor continues the listing.
+     */
     @GetMapping
-    public ResponseEntity<List<Parcel>> getAllParcels() {
-        return ResponseEntity.ok(parcelService.getAllParcels());
+    public ResponseEntity<?> getAllParcels(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        if (cursor == null && limit == null) {
+            return ResponseEntity.ok(parcelService.getAllParcels());
+        }
+        return page(() -> parcelService.getParcelPage(cursor, pageSize(limit)));
+    }
+
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAllParcels() {
+        return ndjsonResponses.stream(parcelService::streamAllParcels);
     }
 
     @GetMapping("/{id}")
@@ -27,6 +54,13 @@ public class ParcelController {
                 .orElse(ResponseEntity.notFound().build());
     }
 
+    @GetMapping("/{id}/track")
+    public ResponseEntity<List<ParcelTrackBuffer.TrackFix>> getParcelTrack(
+            @PathVariable String id,
+            @RequestParam(defaultValue = "0") long since) {
+        return ResponseEntity.ok(parcelService.getParcelTrack(id, since));
+    }
+
     @GetMapping("/tracking/{trackingNumber}")
     public ResponseEntity<Parcel> getParcelByTrackingNumber(@PathVariable String trackingNumber) {
         return parcelService.getParcelByTrackingNumber(trackingNumber)
@@ -35,21 +69,69 @@ public class ParcelController {
     }
 
     @GetMapping("/status/{status}")
-    public ResponseEntity<List<Parcel>> getParcelsByStatus(@PathVariable Parcel.ParcelStatus status) {
-        return ResponseEntity.ok(parcelService.getParcelsByStatus(status));
+    public ResponseEntity<?> getParcelsByStatus(
+            @PathVariable Parcel.ParcelStatus status,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        if (cursor == null && limit == null) {
+            return ResponseEntity.ok(parcelService.getParcelsByStatus(status));
+        }
+        return page(() -> parcelService.getParcelPageByStatus(status, cursor, pageSize(limit)));
+    }
+
+    @GetMapping(value = "/status/{status}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamParcelsByStatus(@PathVariable Parcel.ParcelStatus status) {
+        return ndjsonResponses.stream(() -> parcelService.streamParcelsByStatus(status));
     }
 
     @GetMapping("/driver/{driverId}")
-    public ResponseEntity<List<Parcel>> getParcelsByDriver(@PathVariable String driverId) {
-        return ResponseEntity.ok(parcelService.getParcelsByDriver(driverId));
+    public ResponseEntity<?> getParcelsByDriver(
+            @PathVariable String driverId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit) {
+        if (cursor == null && limit == null) {
+            return ResponseEntity.ok(parcelService.getParcelsByDriver(driverId));
+        }
+        return page(() -> parcelService.getParcelPageByDriver(driverId, cursor, pageSize(limit)));
+    }
+
+    @GetMapping(value = "/driver/{driverId}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamParcelsByDriver(@PathVariable String driverId) {
+        return ndjsonResponses.stream(() -> parcelService.streamParcelsByDriver(driverId));
     }
 
     @GetMapping("/nearby")
-    public ResponseEntity<List<Parcel>> findParcelsNearby(
+    public ResponseEntity<?> findParcelsNearby(
             @RequestParam double longitude,
             @RequestParam double latitude,
-            @RequestParam(defaultValue = "5.0") double radiusKm) {
-        return ResponseEntity.ok(parcelService.findParcelsNearLocation(longitude, latitude, radiusKm));
+            @RequestParam(defaultValue = "5.0") double radiusKm,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(defaultValue = "INDEX") GeoSource source) {
+        // Checked here for both sources: a Mongo limit of 0 would mean no limit at all
+        if (limit < 1 || radiusKm < 0) {
+            return ResponseEntity.badRequest().body(new ErrorResponse("limit must be at least 1 and radiusKm not negative"));
+        }
+        int maxResults = Math.min(limit, MAX_NEARBY_LIMIT);
+        if (source == GeoSource.DATABASE) {
+            return ResponseEntity.ok(parcelService.findParcelsNearLocationInDatabase(longitude, latitude, radiusKm, maxResults));
+        }
+        return ResponseEntity.ok(parcelService.findParcelsNearLocation(longitude, latitude, radiusKm, maxResults));
+    }
+
+    @PostMapping("/within")
+    public ResponseEntity<?> findParcelsWithin(
+            @RequestBody PolygonRequest request,
+            @RequestParam(defaultValue = "1000") int limit) {
+        // As for /nearby: a Mongo limit of 0 would mean no limit at all
+        if (limit < 1) {
+            return ResponseEntity.badRequest().body(new ErrorResponse("limit must be at least 1"));
+        }
+        try {
+            return ResponseEntity.ok(parcelService.findParcelsWithinPolygon(request.coordinates(),
+                    Math.min(limit, MAX_NEARBY_LIMIT)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
     }
 
     @PostMapping
@@ -57,18 +139,40 @@ public class ParcelController {
         return ResponseEntity.ok(parcelService.createParcel(parcel));
     }
 
+    /**
+     * Accepts a JSON array or an NDJSON stream of parcels and inserts them in bulk batches.
+     * Invalid or rejected items are reported individually; the rest are still inserted.
+     */
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public ResponseEntity<ParcelIngestService.BulkIngestResult> bulkCreateParcels(HttpServletRequest request)
+            throws IOException {
+        return ResponseEntity.ok(parcelIngestService.ingest(request.getInputStream()));
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<Parcel> updateParcel(@PathVariable String id, @RequestBody Parcel parcel) {
         return ResponseEntity.ok(parcelService.updateParcel(id, parcel));
     }
 
     @PatchMapping("/{id}/location")
-    public ResponseEntity<Void> updateLocation(
+    public ResponseEntity<?> updateLocation(
             @PathVariable String id,
             @RequestParam double longitude,
-            @RequestParam double latitude) {
-        parcelService.updateParcelLocation(id, longitude, latitude);
-        return ResponseEntity.ok().build();
+            @RequestParam double latitude,
+            @RequestParam(required = false) Long timestamp) {
+        return switch (parcelService.updateParcelLocation(id, longitude, latitude, timestamp)) {
+            case APPLIED -> ResponseEntity.ok().build();
+            case STALE -> ResponseEntity.status(HttpStatus.CONFLICT).build();
+            case NOT_FOUND -> ResponseEntity.notFound().build();
+            case FUTURE -> ResponseEntity.badRequest().body(new ErrorResponse("timestamp is too far in the future"));
+        };
+    }
+
+    @PatchMapping("/{id}/status")
+    public ResponseEntity<Parcel> updateStatus(@PathVariable String id, @RequestParam Parcel.ParcelStatus status) {
+        return parcelService.updateParcelStatus(id, status)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
     }
 
     @DeleteMapping("/{id}")
@@ -81,11 +185,39 @@ public class ParcelController {
     public ResponseEntity<StatsResponse> getStats() {
         return ResponseEntity.ok(new StatsResponse(
                 parcelService.countParcelsByStatus(Parcel.ParcelStatus.PENDING),
+                parcelService.countParcelsByStatus(Parcel.ParcelStatus.PICKED_UP),
                 parcelService.countParcelsByStatus(Parcel.ParcelStatus.IN_TRANSIT),
+                parcelService.countParcelsByStatus(Parcel.ParcelStatus.OUT_FOR_DELIVERY),
                 parcelService.countParcelsByStatus(Parcel.ParcelStatus.DELIVERED),
-                parcelService.countParcelsByStatus(Parcel.ParcelStatus.FAILED)));
+                parcelService.countParcelsByStatus(Parcel.ParcelStatus.FAILED),
+                parcelService.countParcelsByStatus(Parcel.ParcelStatus.RETURNED)));
+    }
+
+    private static int pageSize(Integer limit) {
+        return limit != null ? limit : DEFAULT_PAGE_SIZE;
+    }
+
+    private ResponseEntity<?> page(Supplier<ParcelService.ParcelPage> query) {
+        try {
+            return ResponseEntity.ok(query.get());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ErrorResponse(e.getMessage()));
+        }
+    }
+
+    public enum GeoSource {
+        INDEX,
+        DATABASE
+    }
+
+    // GeoJSON-style ring: [[lon, lat], [lon, lat], ...]
+    public record PolygonRequest(List<List<Double>> coordinates) {
+    }
+
+    public record ErrorResponse(String message) {
     }
 
-    public record StatsResponse(long pending, long inTransit, long delivered, long failed) {
+    public record StatsResponse(long pending, long pickedUp, long inTransit, long outForDelivery,
+                                long delivered, long failed, long returned) {
     }
 }
@@ -0,0 +1,49 @@
+package com.routemaster.controller;
+
+import com.routemaster.service.RouteReplayService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
+
+@RestController
+@RequestMapping("/api/routes")
+@RequiredArgsConstructor
+public class RouteReplayController {
+
+    private final RouteReplayService routeReplayService;
+    private final NdjsonResponses ndjsonResponses;
+
+    /**
+     * Simplified points of one route. zoom is the client's map zoom level (0-22);
+     * bucketSeconds only applies to method=TIME_BUCKET.
+     */
+    @GetMapping("/{routeId}/replay")
+    public ResponseEntity<RouteReplayService.RouteReplay> getRouteReplay(
+            @PathVariable String routeId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(defaultValue = "14") int zoom,
+            @RequestParam(defaultValue = "DOUGLAS_PEUCKER") RouteReplayService.Method method,
+            @RequestParam(defaultValue = "60") long bucketSeconds) {
+        return routeReplayService.getReplay(routeId, date, zoom, method, bucketSeconds)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Simplified routes of a whole day, optionally for one driver, as one JSON document per line.
+     */
+    @GetMapping(value = "/replay", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamDayReplay(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(required = false) String driverId,
+            @RequestParam(defaultValue = "12") int zoom,
+            @RequestParam(defaultValue = "DOUGLAS_PEUCKER") RouteReplayService.Method method,
+            @RequestParam(defaultValue = "60") long bucketSeconds) {
+        return ndjsonResponses.stream(() -> routeReplayService.streamDay(date, driverId, zoom, method, bucketSeconds));
+    }
+}
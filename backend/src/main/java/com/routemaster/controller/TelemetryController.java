@@ -0,0 +1,33 @@
+package com.routemaster.controller;
+
+import com.routemaster.service.TelemetryIngestService;
+import com.routemaster.service.TelemetryIngestService.TelemetryAck;
+import com.routemaster.service.TelemetryIngestService.TelemetryFix;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.annotation.SendToUser;
+import org.springframework.stereotype.Controller;
+
+import java.util.List;
+
+@Controller
+@RequiredArgsConstructor
+public class TelemetryController {
+
+    private final TelemetryIngestService telemetryIngestService;
+
+    /**
+     * Driver devices send batches of fixes to /app/telemetry and receive an ack with the
+     * accepted and rejected counts on /user/queue/telemetry-ack.
+     */
+    @MessageMapping("/telemetry")
+    @SendToUser(destinations = "/queue/telemetry-ack", broadcast = false)
+    public TelemetryAck ingest(@Payload TelemetryBatch batch) {
+        List<TelemetryFix> fixes = batch.fixes() != null ? batch.fixes() : List.of();
+        return telemetryIngestService.submit(fixes);
+    }
+
+    public record TelemetryBatch(List<TelemetryFix> fixes) {
+    }
+}
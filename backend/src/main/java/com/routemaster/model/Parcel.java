@@ -6,6 +6,9 @@ import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexType;
+import org.springframework.data.mongodb.core.index.GeoSpatialIndexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDateTime;
@@ -35,6 +38,17 @@ public class Parcel {
     private Double destinationLatitude;
     private Double destinationLongitude;
 
+    // GeoJSON copies of the coordinates above, kept in sync on save (see ParcelGeoJsonCallback)
+    @GeoSpatialIndexed(type = GeoSpatialIndexType.GEO_2DSPHERE)
+    private GeoJsonPoint currentLocation;
+
+    private GeoJsonPoint originLocation;
+
+    private GeoJsonPoint destinationLocation;
+
+    // Epoch millis of the GPS fix behind the current location; older fixes are not applied
+    private Long locationTimestamp;
+
     private String assignedDriverId;
 
     private String assignedVehicleId;
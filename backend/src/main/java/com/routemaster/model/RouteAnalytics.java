@@ -13,6 +13,8 @@ import java.time.LocalDateTime;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "route_analytics")
+// One result per route and day, as in the Postgres schema; both analytics jobs upsert on it.
+// The unique index is created at startup by RouteAnalyticsIndexMigration; removing old duplicates is opt-in.
 public class RouteAnalytics {
 
     @Id
@@ -42,6 +44,8 @@ public class RouteAnalytics {
 
     private Long totalDurationMinutes;
 
+    private Long movingDurationMinutes; // segments at walking pace or faster
+
     private LocalDateTime processedAt;
 
     private String notes;
@@ -5,6 +5,8 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.LocalDate;
@@ -16,6 +18,11 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "route_logs")
+@CompoundIndexes({
+        @CompoundIndex(name = "routeId_date", def = "{'routeId': 1, 'date': -1}"),
+        // _id last so the batch reader's keyset pages within a driver partition are index scans
+        @CompoundIndex(name = "date_driverId_id", def = "{'date': 1, 'driverId': 1, '_id': 1}")
+})
 public class RouteLog {
 
     @Id
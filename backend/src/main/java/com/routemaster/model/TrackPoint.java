@@ -0,0 +1,34 @@
+package com.routemaster.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.TimeSeries;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+
+import java.time.Instant;
+
+/**
+ * A historical parcel position that has aged out of the in-memory track buffer.
+ * Stored append-only in a Mongo time-series collection bucketed by parcel.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "parcel_tracks")
+@TimeSeries(timeField = "timestamp", metaField = "parcelId", granularity = Granularity.SECONDS)
+public class TrackPoint {
+
+    @Id
+    private String id;
+
+    private String parcelId;
+
+    private Instant timestamp;
+
+    private Double longitude;
+
+    private Double latitude;
+}
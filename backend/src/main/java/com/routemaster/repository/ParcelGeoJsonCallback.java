@@ -0,0 +1,46 @@
+package com.routemaster.repository;
+
+import com.routemaster.model.Parcel;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertCallback;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the GeoJSON points of a parcel in sync with its latitude/longitude fields
+ * before it is written. Plain coordinates win; a point sent without them fills them in.
+ */
+@Component
+public class ParcelGeoJsonCallback implements BeforeConvertCallback<Parcel> {
+
+    @Override
+    public Parcel onBeforeConvert(Parcel parcel, String collection) {
+        parcel.setCurrentLocation(sync(parcel.getCurrentLongitude(), parcel.getCurrentLatitude(),
+                parcel.getCurrentLocation()));
+        if (parcel.getCurrentLocation() != null) {
+            parcel.setCurrentLongitude(parcel.getCurrentLocation().getX());
+            parcel.setCurrentLatitude(parcel.getCurrentLocation().getY());
+        }
+
+        parcel.setOriginLocation(sync(parcel.getOriginLongitude(), parcel.getOriginLatitude(),
+                parcel.getOriginLocation()));
+        if (parcel.getOriginLocation() != null) {
+            parcel.setOriginLongitude(parcel.getOriginLocation().getX());
+            parcel.setOriginLatitude(parcel.getOriginLocation().getY());
+        }
+
+        parcel.setDestinationLocation(sync(parcel.getDestinationLongitude(), parcel.getDestinationLatitude(),
+                parcel.getDestinationLocation()));
+        if (parcel.getDestinationLocation() != null) {
+            parcel.setDestinationLongitude(parcel.getDestinationLocation().getX());
+            parcel.setDestinationLatitude(parcel.getDestinationLocation().getY());
+        }
+        return parcel;
+    }
+
+    private static GeoJsonPoint sync(Double longitude, Double latitude, GeoJsonPoint point) {
+        if (longitude != null && latitude != null) {
+            return new GeoJsonPoint(longitude, latitude);
+        }
+        return point;
+    }
+}
@@ -0,0 +1,104 @@
+package com.routemaster.security;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+import java.util.Set;
+
+/**
+ * Authenticates STOMP sessions with the JWT of the REST API and guards inbound destinations.
+ * The token is read from the Authorization header of the CONNECT frame; connecting without one
+ * is allowed for read-only viewers, an invalid one is rejected. Sending telemetry needs a DRIVER
+ * or ADMIN principal. The transport accepts large frames for telemetry batches, so any other
+ * frame over the usual 64 KB limit is rejected here.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StompAuthChannelInterceptor implements ChannelInterceptor {
+
+    public static final String TELEMETRY_DESTINATION = "/app/telemetry";
+
+    // Spring's default STOMP message size limit
+    private static final int DEFAULT_MESSAGE_SIZE_LIMIT = 64 * 1024;
+
+    private static final Set<String> TELEMETRY_ROLES = Set.of("ROLE_DRIVER", "ROLE_ADMIN");
+
+    private final JwtService jwtService;
+    private final UserDetailsService userDetailsService;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+
+        if (accessor.getCommand() == StompCommand.CONNECT) {
+            String authHeader = accessor.getFirstNativeHeader("Authorization");
+            if (authHeader != null) {
+                accessor.setUser(authenticate(authHeader));
+            }
+        } else if (accessor.getCommand() == StompCommand.SEND) {
+            boolean telemetry = TELEMETRY_DESTINATION.equals(accessor.getDestination());
+            if (telemetry && !canSendTelemetry(accessor.getUser())) {
+                throw new AccessDeniedException("Telemetry requires a DRIVER or ADMIN token");
+            }
+            if (!telemetry && payloadSize(message) > DEFAULT_MESSAGE_SIZE_LIMIT) {
+                throw new AccessDeniedException("Message too large for " + accessor.getDestination());
+            }
+        }
+        return message;
+    }
+
+    private Authentication authenticate(String authHeader) {
+        if (!authHeader.startsWith("Bearer ")) {
+            throw new BadCredentialsException("Expected a Bearer token");
+        }
+        String jwt = authHeader.substring(7);
+        try {
+            String username = jwtService.extractUsername(jwt);
+            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+            if (!userDetails.isEnabled() || !jwtService.isTokenValid(jwt, userDetails)) {
+                throw new BadCredentialsException("Invalid token");
+            }
+            return new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
+        } catch (BadCredentialsException e) {
+            throw e;
+        } catch (Exception e) {
+            log.debug("Rejected STOMP CONNECT: {}", e.getMessage());
+            throw new BadCredentialsException("Invalid token", e);
+        }
+    }
+
+    private static boolean canSendTelemetry(Principal user) {
+        if (!(user instanceof Authentication authentication) || !authentication.isAuthenticated()) {
+            return false;
+        }
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            if (TELEMETRY_ROLES.contains(authority.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int payloadSize(Message<?> message) {
+        return message.getPayload() instanceof byte[] bytes ? bytes.length : 0;
+    }
+}
@@ -2,18 +2,37 @@ package com.routemaster.service;
 
 import com.routemaster.model.Parcel;
 import com.routemaster.repository.ParcelRepository;
+import com.routemaster.simulator.ColumnarRouteEngine;
+import com.routemaster.simulator.FixedRateTicker;
+import com.routemaster.simulator.ObjectRouteEngine;
+import com.routemaster.simulator.RouteEngine;
+import com.routemaster.simulator.RouteSink;
+import com.routemaster.websocket.LocationBroadcaster;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
-import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Queue;
 import java.util.Random;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
 
 @Service
 @RequiredArgsConstructor
@@ -21,7 +40,14 @@ import java.util.Map;
 public class LocationSimulatorService {
 
     private final ParcelRepository parcelRepository;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final MongoTemplate mongoTemplate;
+    private final LocationWriteBehindBuffer writeBehindBuffer;
+    private final LocationBroadcaster locationBroadcaster;
+    private final ParcelGridIndex gridIndex;
+    private final ParcelCache parcelCache;
+    private final ParcelStatusCounters statusCounters;
+    private final ParcelTrackBuffer trackBuffer;
+    private final MeterRegistry meterRegistry;
 
     @Value("${app.simulator.enabled:true}")
     private boolean simulatorEnabled;
@@ -29,25 +55,99 @@ public class LocationSimulatorService {
     @Value("${app.simulator.parcel-count:20}")
     private int parcelCount;
 
-    private final Random random = new Random();
-    // Changed key from Long to String
-    private final Map<String, SimulatedRoute> activeRoutes = new ConcurrentHashMap<>();
+    @Value("${app.simulator.engine:OBJECT}")
+    private RouteEngine.Type engineType;
+
+    // 0 = one shard per available core
+    @Value("${app.simulator.threads:0}")
+    private int threads;
+
+    @Value("${app.simulator.seed:42}")
+    private long seed;
+
+    @Value("${app.simulator.speed-jitter:0.0}")
+    private double speedJitter;
+
+    @Value("${app.simulator.interval:1000}")
+    private long interval;
+
+    @Value("${app.simulator.overrun-policy:SCALE}")
+    private FixedRateTicker.OverrunPolicy overrunPolicy;
+
+    private Random random;
+    private RouteEngine routes;
+    private List<TickShard> shards;
+    private ForkJoinPool tickPool;
+    private FixedRateTicker ticker;
+    private final List<LocationUpdate> tickUpdates = new ArrayList<>();
+    private final List<String> arrived = new ArrayList<>();
+    // Parcels deleted or taken out of transit elsewhere; their routes are removed before the next tick
+    private final Queue<String> stopped = new ConcurrentLinkedQueue<>();
 
     // City center coordinates (example: New Delhi, India)
     private static final double CENTER_LAT = 28.6139;
     private static final double CENTER_LON = 77.2090;
     private static final double RADIUS = 0.5; // degrees (~55km)
+    private static final double STEP_SIZE = 0.001; // ~111 meters per tick interval
 
     @PostConstruct
     public void initialize() {
+        int shardCount = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        routes = engineType == RouteEngine.Type.COLUMNAR
+                ? new ColumnarRouteEngine(parcelCount, shardCount)
+                : new ObjectRouteEngine(shardCount);
+
+        // Every shard draws from its own generator split off one seed, so runs are reproducible
+        SplittableRandom seeds = new SplittableRandom(seed);
+        random = new Random(seeds.nextLong());
+        shards = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(new TickShard(i, seeds.split()));
+        }
+        tickPool = shardCount > 1 ? new ForkJoinPool(shardCount) : null;
+
         if (simulatorEnabled) {
-            log.info("Location simulator is ENABLED. Will simulate {} parcels.", parcelCount);
+            log.info("Location simulator is ENABLED. Will simulate {} parcels on {} shards.", parcelCount, shardCount);
             initializeSimulatedParcels();
+            ticker = new FixedRateTicker("simulator-tick", interval, overrunPolicy, this::simulateLocationUpdates, meterRegistry);
         } else {
             log.info("Location simulator is DISABLED.");
         }
     }
 
+    /**
+     * Start ticking once the context is fully started, after the other startup listeners
+     * (spatial index, status counters) have run, so no tick sees a half-initialized application.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    public void startTicker() {
+        if (ticker != null) {
+            ticker.start();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (ticker != null) {
+            ticker.stop();
+        }
+        if (tickPool != null) {
+            tickPool.shutdownNow();
+        }
+    }
+
+    /**
+     * Stop moving a parcel that was deleted or left IN_TRANSIT. Safe to call from any thread;
+     * the route is removed by the tick thread before the next tick, as routes are only changed there.
+     */
+    public void stopSimulating(String parcelId) {
+        // Without a ticker nothing is simulated and nothing would drain the queue
+        if (ticker != null) {
+            stopped.add(parcelId);
+        }
+    }
+
     private void initializeSimulatedParcels() {
         // Get or create parcels for simulation
         List<Parcel> existingParcels = parcelRepository.findByStatus(Parcel.ParcelStatus.IN_TRANSIT);
@@ -64,15 +164,16 @@ public class LocationSimulatorService {
         for (Parcel parcel : inTransitParcels) {
             if (parcel.getCurrentLatitude() != null && parcel.getCurrentLongitude() != null &&
                     parcel.getDestinationLatitude() != null && parcel.getDestinationLongitude() != null) {
-                activeRoutes.put(parcel.getId(), new SimulatedRoute(
+                routes.add(parcel.getId(),
+                        parcel.getTrackingNumber(),
                         parcel.getCurrentLongitude(),
                         parcel.getCurrentLatitude(),
                         parcel.getDestinationLongitude(),
-                        parcel.getDestinationLatitude()));
+                        parcel.getDestinationLatitude());
             }
         }
 
-        log.info("Initialized {} active routes for simulation", activeRoutes.size());
+        log.info("Initialized {} active routes for simulation ({} engine)", routes.size(), engineType);
     }
 
     private void createSimulatedParcel(int index) {
@@ -101,87 +202,135 @@ public class LocationSimulatorService {
         parcel.setPriority(random.nextBoolean() ? "HIGH" : "MEDIUM");
 
         parcelRepository.save(parcel);
+        statusCounters.increment(Parcel.ParcelStatus.IN_TRANSIT);
     }
 
     /**
-     * Simulate location updates every second
+     * One simulator tick, run by the fixed-rate ticker every interval.
+     * Routes move STEP_SIZE per interval of wall-clock time, so a tick standing for
+     * several intervals (SCALE overrun policy) moves them proportionally further.
      */
-    @Scheduled(fixedDelayString = "${app.simulator.interval:1000}")
-    public void simulateLocationUpdates() {
-        if (!simulatorEnabled || activeRoutes.isEmpty()) {
+    private void simulateLocationUpdates(long timestamp, double periods) {
+        for (String parcelId = stopped.poll(); parcelId != null; parcelId = stopped.poll()) {
+            routes.remove(parcelId);
+        }
+        if (routes.size() == 0) {
             return;
         }
 
-        activeRoutes.forEach((parcelId, route) -> {
-            // Move parcel towards destination
-            route.advance();
+        advanceShards(STEP_SIZE * periods);
 
-            // Update in database
-            parcelRepository.findById(parcelId).ifPresent(parcel -> {
-                parcel.setCurrentLongitude(route.currentLon);
-                parcel.setCurrentLatitude(route.currentLat);
-                parcelRepository.save(parcel);
-
-                // Push update via WebSocket
-                LocationUpdate update = new LocationUpdate(
-                        parcelId,
-                        parcel.getTrackingNumber(),
-                        route.currentLon,
-                        route.currentLat,
-                        parcel.getStatus().name(),
-                        System.currentTimeMillis());
-
-                messagingTemplate.convertAndSend("/topic/locations", update);
-                messagingTemplate.convertAndSend("/topic/locations/" + parcelId, update);
-            });
-
-            // Check if reached destination
-            if (route.hasReachedDestination()) {
-                parcelRepository.findById(parcelId).ifPresent(parcel -> {
-                    parcel.setStatus(Parcel.ParcelStatus.DELIVERED);
-                    parcelRepository.save(parcel);
-                    activeRoutes.remove(parcelId);
-                    log.info("Parcel {} reached destination", parcel.getTrackingNumber());
-                });
+        // Collect per-shard results on the tick thread for persistence and broadcast
+        boolean broadcast = locationBroadcaster.hasListeners();
+        for (TickShard shard : shards) {
+            for (int i = 0; i < shard.count; i++) {
+                // Buffer the new position; it is written in bulk by the write-behind stage
+                writeBehindBuffer.enqueue(shard.parcelIds[i], shard.longitudes[i], shard.latitudes[i], timestamp);
+                gridIndex.update(shard.parcelIds[i], shard.longitudes[i], shard.latitudes[i]);
+                trackBuffer.record(shard.parcelIds[i], shard.longitudes[i], shard.latitudes[i], timestamp);
+                if (broadcast) {
+                    tickUpdates.add(new LocationUpdate(shard.parcelIds[i], shard.trackingNumbers[i],
+                            shard.longitudes[i], shard.latitudes[i], Parcel.ParcelStatus.IN_TRANSIT.name(), timestamp));
+                }
             }
-        });
+            arrived.addAll(shard.arrived);
+        }
+
+        // Push updates via WebSocket; update objects are only built when someone is subscribed
+        if (broadcast) {
+            locationBroadcaster.publish(tickUpdates);
+            tickUpdates.clear();
+        }
+        arrived.forEach(routes::remove);
+
+        if (writeBehindBuffer.flushesPerTick()) {
+            writeBehindBuffer.flush();
+        }
+        markDelivered();
+    }
+
+    private void advanceShards(double stepSize) {
+        for (TickShard shard : shards) {
+            shard.reset(stepSize);
+        }
+        if (tickPool == null) {
+            shards.forEach(TickShard::run);
+            return;
+        }
+        CompletableFuture.allOf(shards.stream()
+                        .map(shard -> CompletableFuture.runAsync(shard, tickPool))
+                        .toArray(CompletableFuture[]::new))
+                .join();
+    }
+
+    private void markDelivered() {
+        if (arrived.isEmpty()) {
+            return;
+        }
+        // Flush first so the final position is stored before the status changes
+        writeBehindBuffer.flush();
+        long delivered = mongoTemplate.updateMulti(
+                Query.query(Criteria.where("_id").in(arrived).and("status").is(Parcel.ParcelStatus.IN_TRANSIT)),
+                Update.update("status", Parcel.ParcelStatus.DELIVERED),
+                Parcel.class).getModifiedCount();
+        statusCounters.transition(Parcel.ParcelStatus.IN_TRANSIT, Parcel.ParcelStatus.DELIVERED, delivered);
+        parcelCache.invalidateAll(arrived);
+        log.info("{} parcels reached destination", arrived.size());
+        arrived.clear();
     }
 
     /**
-     * Simulated route that moves a parcel from origin to destination
+     * One partition of the active routes, advanced on its own worker with its own random generator.
+     * Results are kept per shard in column arrays that grow as needed and are reused across ticks,
+     * so advancing a route allocates nothing.
      */
-    private static class SimulatedRoute {
-        private double currentLon;
-        private double currentLat;
-        private final double destLon;
-        private final double destLat;
-        private static final double STEP_SIZE = 0.001; // ~111 meters per step
-
-        public SimulatedRoute(double startLon, double startLat, double destLon, double destLat) {
-            this.currentLon = startLon;
-            this.currentLat = startLat;
-            this.destLon = destLon;
-            this.destLat = destLat;
-        }
-
-        public void advance() {
-            double deltaLon = destLon - currentLon;
-            double deltaLat = destLat - currentLat;
-            double distance = Math.sqrt(deltaLon * deltaLon + deltaLat * deltaLat);
-
-            if (distance > STEP_SIZE) {
-                currentLon += (deltaLon / distance) * STEP_SIZE;
-                currentLat += (deltaLat / distance) * STEP_SIZE;
-            } else {
-                currentLon = destLon;
-                currentLat = destLat;
-            }
+    private class TickShard implements Runnable, RouteSink {
+        private final int index;
+        private final SplittableRandom shardRandom;
+        private String[] parcelIds = new String[16];
+        private String[] trackingNumbers = new String[16];
+        private double[] longitudes = new double[16];
+        private double[] latitudes = new double[16];
+        private int count;
+        private final List<String> arrived = new ArrayList<>();
+    // Parcels deleted or taken out of transit elsewhere; their routes are removed before the next tick
+    private final Queue<String> stopped = new ConcurrentLinkedQueue<>();
+        private double stepSize;
+
+        TickShard(int index, SplittableRandom shardRandom) {
+            this.index = index;
+            this.shardRandom = shardRandom;
         }
 
-        public boolean hasReachedDestination() {
-            double distance = Math.sqrt(
-                    Math.pow(destLon - currentLon, 2) + Math.pow(destLat - currentLat, 2));
-            return distance < STEP_SIZE;
+        void reset(double stepSize) {
+            this.stepSize = stepSize;
+            // Ids from the last tick are overwritten, not cleared; entries past count are ignored
+            count = 0;
+            arrived.clear();
+        }
+
+        @Override
+        public void run() {
+            routes.advance(index, stepSize, speedJitter, shardRandom, this);
+        }
+
+        @Override
+        public void accept(String parcelId, String trackingNumber, double longitude, double latitude, boolean reached) {
+            if (count == parcelIds.length) {
+                int capacity = count * 2;
+                parcelIds = Arrays.copyOf(parcelIds, capacity);
+                trackingNumbers = Arrays.copyOf(trackingNumbers, capacity);
+                longitudes = Arrays.copyOf(longitudes, capacity);
+                latitudes = Arrays.copyOf(latitudes, capacity);
+            }
+            parcelIds[count] = parcelId;
+            trackingNumbers[count] = trackingNumber;
+            longitudes[count] = longitude;
+            latitudes[count] = latitude;
+            count++;
+            if (reached) {
+                arrived.add(parcelId);
+            }
         }
     }
 
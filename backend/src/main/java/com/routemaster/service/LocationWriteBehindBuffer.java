@@ -0,0 +1,261 @@
+package com.routemaster.service;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.routemaster.model.Parcel;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind stage for parcel positions.
+ * Positions are kept in memory (latest value wins) and written to Mongo as a
+ * single unordered bulk $set per flush instead of one findById + save per parcel.
+ * The GeoJSON currentLocation is set alongside the plain coordinates.
+ * Each parcel keeps one mutable slot that is overwritten on every enqueue and marked clean by
+ * the flush, so steady-state ticks allocate nothing here; a slot that saw no position for a whole
+ * flush interval is dropped.
+ */
+@Component
+@Slf4j
+public class LocationWriteBehindBuffer {
+
+    private final MongoTemplate mongoTemplate;
+    private final ParcelCache parcelCache;
+    private final Timer flushTimer;
+    private final DistributionSummary flushSize;
+
+    private final Map<String, PendingLocation> pending = new ConcurrentHashMap<>();
+
+    // A lock rather than synchronized: a virtual thread blocked on Mongo inside synchronized pins its carrier
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    // Positions of the batch being written, for the cache; reused by every flush under flushLock
+    private double[] batchLongitudes = new double[0];
+    private double[] batchLatitudes = new double[0];
+    private long[] batchTimestamps = new long[0];
+
+    @Value("${app.simulator.write-behind.max-batch-size:10000}")
+    private int maxBatchSize;
+
+    // TICK: the simulator flushes at the end of every tick; INTERVAL: flushed on its own schedule
+    @Value("${app.simulator.write-behind.flush-mode:TICK}")
+    private FlushMode flushMode;
+
+    public LocationWriteBehindBuffer(MongoTemplate mongoTemplate, ParcelCache parcelCache, MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.parcelCache = parcelCache;
+        this.flushTimer = Timer.builder("routemaster.location.flush.latency")
+                .description("Time spent writing one batch of buffered parcel positions")
+                .register(meterRegistry);
+        this.flushSize = DistributionSummary.builder("routemaster.location.flush.size")
+                .description("Number of parcel positions written per flush")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Record the latest position of a parcel. Replaces any older position that has not been flushed yet.
+     */
+    public void enqueue(String parcelId, double longitude, double latitude, long timestamp) {
+        while (true) {
+            PendingLocation slot = pending.computeIfAbsent(parcelId, id -> new PendingLocation());
+            if (slot.offer(longitude, latitude, timestamp)) {
+                return;
+            }
+            // The flush dropped this slot as idle just now; the next lookup creates a new one
+        }
+    }
+
+    public boolean flushesPerTick() {
+        return flushMode == FlushMode.TICK;
+    }
+
+    @Scheduled(fixedDelayString = "${app.simulator.write-behind.flush-interval:1000}")
+    public void scheduledFlush() {
+        if (flushMode == FlushMode.INTERVAL) {
+            flush();
+        }
+    }
+
+    public int pendingCount() {
+        int count = 0;
+        for (PendingLocation slot : pending.values()) {
+            synchronized (slot) {
+                if (slot.dirty) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Write all buffered positions to Mongo.
+     *
+     * @return number of parcels written
+     */
+    public int flush() {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        flushLock.lock();
+        try {
+            return flushPending();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private int flushPending() {
+        long start = System.nanoTime();
+        int written = 0;
+        if (batchTimestamps.length != maxBatchSize) {
+            batchLongitudes = new double[maxBatchSize];
+            batchLatitudes = new double[maxBatchSize];
+            batchTimestamps = new long[maxBatchSize];
+        }
+        BulkOperations bulkOps = newBulkOps();
+        List<String> batchIds = new ArrayList<>();
+        List<PendingLocation> batchSlots = new ArrayList<>();
+
+        for (Map.Entry<String, PendingLocation> entry : pending.entrySet()) {
+            PendingLocation slot = entry.getValue();
+            synchronized (slot) {
+                if (!slot.dirty) {
+                    // Nothing new since the last flush, e.g. a delivered parcel: release the slot
+                    slot.retired = true;
+                    pending.remove(entry.getKey(), slot);
+                    continue;
+                }
+                bulkOps.updateOne(positionQuery(entry.getKey(), slot.timestamp),
+                        positionUpdate(slot.longitude, slot.latitude, slot.timestamp));
+                int index = batchIds.size();
+                batchLongitudes[index] = slot.longitude;
+                batchLatitudes[index] = slot.latitude;
+                batchTimestamps[index] = slot.timestamp;
+                // A position enqueued from here on marks the slot dirty again for the next flush
+                slot.dirty = false;
+            }
+            batchIds.add(entry.getKey());
+            batchSlots.add(slot);
+
+            if (batchIds.size() >= maxBatchSize) {
+                written += execute(bulkOps, batchIds, batchSlots);
+                bulkOps = newBulkOps();
+                batchIds.clear();
+                batchSlots.clear();
+            }
+        }
+        if (!batchIds.isEmpty()) {
+            written += execute(bulkOps, batchIds, batchSlots);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        flushTimer.record(elapsed, TimeUnit.NANOSECONDS);
+        flushSize.record(written);
+        log.debug("Flushed {} parcel locations in {} ms", written, elapsed / 1_000_000.0);
+        return written;
+    }
+
+    /**
+     * Matches the parcel only while its stored fix is older, like ParcelService.updateParcelLocation.
+     */
+    static Query positionQuery(String parcelId, long timestamp) {
+        return Query.query(Criteria.where("_id").is(parcelId).and("locationTimestamp").not().gte(timestamp));
+    }
+
+    static Update positionUpdate(double longitude, double latitude, long timestamp) {
+        return new Update()
+                .set("currentLongitude", longitude)
+                .set("currentLatitude", latitude)
+                .set("currentLocation", new GeoJsonPoint(longitude, latitude))
+                .set("locationTimestamp", timestamp);
+    }
+
+    private BulkOperations newBulkOps() {
+        return mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Parcel.class);
+    }
+
+    private int execute(BulkOperations bulkOps, List<String> batchIds, List<PendingLocation> batchSlots) {
+        BulkWriteResult result;
+        try {
+            result = bulkOps.execute();
+        } catch (Exception e) {
+            // Retry with the next flush; a slot that got a newer position meanwhile keeps that one
+            for (PendingLocation slot : batchSlots) {
+                slot.requeue();
+            }
+            // Part of an unordered batch may have been written, so cached positions cannot be trusted
+            parcelCache.invalidateAll(batchIds);
+            log.error("Failed to flush {} parcel locations, kept them for the next flush", batchIds.size(), e);
+            return 0;
+        }
+        // Move cached parcels along instead of evicting every moving parcel on every flush
+        for (int i = 0; i < batchIds.size(); i++) {
+            parcelCache.updateLocation(batchIds.get(i), batchLongitudes[i], batchLatitudes[i], batchTimestamps[i]);
+        }
+        return result.getMatchedCount();
+    }
+
+    public enum FlushMode {
+        TICK,
+        INTERVAL
+    }
+
+    /**
+     * Latest unflushed position of one parcel, reused across flushes.
+     * Guarded by its own monitor; the sections are short and never block.
+     */
+    private static final class PendingLocation {
+        private double longitude;
+        private double latitude;
+        private long timestamp;
+        private boolean dirty;
+        private boolean retired;
+
+        /**
+         * @return false if the slot was dropped and must not be written to any more
+         */
+        synchronized boolean offer(double longitude, double latitude, long timestamp) {
+            if (retired) {
+                return false;
+            }
+            // Newest fix wins, also over a clean slot: its values may still be in flight, and a failed
+            // flush requeues whatever the slot holds, which must not then be an older fix
+            if (timestamp >= this.timestamp) {
+                this.longitude = longitude;
+                this.latitude = latitude;
+                this.timestamp = timestamp;
+                dirty = true;
+            }
+            return true;
+        }
+
+        /**
+         * Mark the position written by a failed flush as unflushed again. The slot still holds it
+         * unless a newer position arrived, which is then already marked and wins; offer never
+         * replaces it with an older one.
+         */
+        synchronized void requeue() {
+            if (!retired) {
+                dirty = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.routemaster.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.routemaster.model.Parcel;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Bounded read-through cache for parcel lookups by id and tracking number.
+ * Parcels are cached by id; tracking numbers only map to ids, so a single
+ * invalidation by id covers both lookups. Writers must invalidate what they change; position
+ * writers may instead move the cached copy with {@link #updateLocation}, which keeps its expiry.
+ * Hit/miss counts are published as cache.gets{cache=parcels.byId|parcels.byTrackingNumber}.
+ */
+@Component
+public class ParcelCache {
+
+    private final Cache<String, Parcel> byId;
+    private final Cache<String, String> idByTrackingNumber;
+
+    public ParcelCache(@Value("${app.cache.parcels.max-size:10000}") long maxSize,
+                       @Value("${app.cache.parcels.ttl:30s}") Duration ttl,
+                       MeterRegistry meterRegistry) {
+        this.byId = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(expireAfterCreate(ttl))
+                .recordStats()
+                .build();
+        this.idByTrackingNumber = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, byId, "parcels.byId");
+        CaffeineCacheMetrics.monitor(meterRegistry, idByTrackingNumber, "parcels.byTrackingNumber");
+    }
+
+    public Optional<Parcel> getById(String id, Function<String, Optional<Parcel>> loader) {
+        // A null from the mapping function is not cached, so missing parcels are looked up again
+        return Optional.ofNullable(byId.get(id, key -> loader.apply(key).orElse(null)));
+    }
+
+    public Optional<Parcel> getByTrackingNumber(String trackingNumber,
+                                                Function<String, Optional<Parcel>> idLoader,
+                                                Function<String, Optional<Parcel>> trackingNumberLoader) {
+        String id = idByTrackingNumber.getIfPresent(trackingNumber);
+        if (id != null) {
+            Optional<Parcel> parcel = getById(id, idLoader);
+            if (parcel.isPresent() && trackingNumber.equals(parcel.get().getTrackingNumber())) {
+                return parcel;
+            }
+            idByTrackingNumber.invalidate(trackingNumber);
+        }
+
+        Optional<Parcel> parcel = trackingNumberLoader.apply(trackingNumber);
+        parcel.ifPresent(this::put);
+        return parcel;
+    }
+
+    public void put(Parcel parcel) {
+        if (parcel.getId() == null) {
+            return;
+        }
+        byId.put(parcel.getId(), parcel);
+        if (parcel.getTrackingNumber() != null) {
+            idByTrackingNumber.put(parcel.getTrackingNumber(), parcel.getId());
+        }
+    }
+
+    /**
+     * Move a cached parcel to a position that has just been written. The entry is replaced by an
+     * updated copy, so readers never see half of a move, and it still expires ttl after it was loaded.
+     * Does nothing if the parcel is not cached or already holds a newer fix.
+     */
+    public void updateLocation(String id, double longitude, double latitude, long timestamp) {
+        byId.asMap().computeIfPresent(id, (key, cached) -> {
+            if (cached.getLocationTimestamp() != null && cached.getLocationTimestamp() >= timestamp) {
+                return cached;
+            }
+            Parcel moved = new Parcel();
+            BeanUtils.copyProperties(cached, moved);
+            moved.setCurrentLongitude(longitude);
+            moved.setCurrentLatitude(latitude);
+            moved.setCurrentLocation(new GeoJsonPoint(longitude, latitude));
+            moved.setLocationTimestamp(timestamp);
+            return moved;
+        });
+    }
+
+    public void invalidate(String id) {
+        Parcel cached = byId.getIfPresent(id);
+        byId.invalidate(id);
+        if (cached != null && cached.getTrackingNumber() != null) {
+            idByTrackingNumber.invalidate(cached.getTrackingNumber());
+        }
+    }
+
+    public void invalidateAll(Collection<String> ids) {
+        // Tracking number mappings of these ids fall through to a fresh load on their next use
+        byId.invalidateAll(ids);
+    }
+
+    public void invalidateTrackingNumber(String trackingNumber) {
+        if (trackingNumber != null) {
+            idByTrackingNumber.invalidate(trackingNumber);
+        }
+    }
+
+    // Like expireAfterWrite, except that replacing an entry keeps its deadline
+    private static Expiry<String, Parcel> expireAfterCreate(Duration ttl) {
+        long ttlNanos = ttl.toNanos();
+        return new Expiry<>() {
+            @Override
+            public long expireAfterCreate(String key, Parcel value, long currentTime) {
+                return ttlNanos;
+            }
+
+            @Override
+            public long expireAfterUpdate(String key, Parcel value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+
+            @Override
+            public long expireAfterRead(String key, Parcel value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+        };
+    }
+}
@@ -0,0 +1,182 @@
+package com.routemaster.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * In-memory uniform grid over current parcel positions.
+ * Each cell covers cellSize x cellSize degrees and holds the ids of the parcels inside it,
+ * so box queries only touch the cells that overlap the box.
+ */
+@Component
+public class ParcelGridIndex {
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    private static final double KM_PER_DEGREE_LAT = 110.574;
+    private static final double KM_PER_DEGREE_LON = 111.320;
+
+    private final double cellSize;
+
+    private final Map<String, Position> positions = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> cells = new ConcurrentHashMap<>();
+
+    public ParcelGridIndex(@Value("${app.spatial.cell-size-degrees:0.01}") double cellSize) {
+        this.cellSize = cellSize;
+    }
+
+    public void update(String parcelId, double longitude, double latitude) {
+        long cell = cellKey(cellX(longitude), cellY(latitude));
+        // compute() serializes concurrent moves of the same parcel
+        positions.compute(parcelId, (id, previous) -> {
+            if (previous == null || previous.cell() != cell) {
+                if (previous != null) {
+                    removeFromCell(previous.cell(), id);
+                }
+                // Add inside compute() so it cannot race with removeFromCell dropping an empty cell
+                cells.compute(cell, (c, ids) -> {
+                    Set<String> members = ids != null ? ids : ConcurrentHashMap.newKeySet();
+                    members.add(id);
+                    return members;
+                });
+            }
+            return new Position(longitude, latitude, cell);
+        });
+    }
+
+    public void remove(String parcelId) {
+        positions.computeIfPresent(parcelId, (id, previous) -> {
+            removeFromCell(previous.cell(), id);
+            return null;
+        });
+    }
+
+    public int size() {
+        return positions.size();
+    }
+
+    /**
+     * Visit every parcel whose current position lies inside the box.
+     */
+    public void forEachInBox(double minLon, double minLat, double maxLon, double maxLat, Consumer<String> action) {
+        int x0 = cellX(minLon);
+        int x1 = cellX(maxLon);
+        int y0 = cellY(minLat);
+        int y1 = cellY(maxLat);
+        long cellCount = (long) (x1 - x0 + 1) * (y1 - y0 + 1);
+
+        // A zoomed-out box covers more cells than there are parcels; a plain scan is cheaper then
+        if (cellCount > cells.size()) {
+            positions.forEach((id, position) -> {
+                if (position.within(minLon, minLat, maxLon, maxLat)) {
+                    action.accept(id);
+                }
+            });
+            return;
+        }
+
+        for (int x = x0; x <= x1; x++) {
+            for (int y = y0; y <= y1; y++) {
+                Set<String> ids = cells.get(cellKey(x, y));
+                if (ids == null) {
+                    continue;
+                }
+                boolean inner = x > x0 && x < x1 && y > y0 && y < y1;
+                for (String id : ids) {
+                    Position position = positions.get(id);
+                    if (position != null && (inner || position.within(minLon, minLat, maxLon, maxLat))) {
+                        action.accept(id);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Parcels within radiusKm of the point, nearest first, at most limit of them.
+     * Only the cells overlapping the circle's bounding box are scanned, and a bounded
+     * max-heap keeps the nearest candidates so the result is never fully sorted.
+     */
+    public List<Neighbour> findNearby(double longitude, double latitude, double radiusKm, int limit) {
+        if (limit <= 0 || radiusKm < 0) {
+            return List.of();
+        }
+        double latSpan = radiusKm / KM_PER_DEGREE_LAT;
+        double cosLat = Math.max(Math.cos(Math.toRadians(latitude)), 1e-6);
+        double lonSpan = Math.min(radiusKm / (KM_PER_DEGREE_LON * cosLat), 180.0);
+
+        double lat1 = Math.toRadians(latitude);
+        double cosLat1 = Math.cos(lat1);
+        PriorityQueue<Neighbour> nearest = new PriorityQueue<>(
+                Math.min(limit, 1024), Comparator.comparingDouble(Neighbour::distanceKm).reversed());
+
+        forEachInBox(longitude - lonSpan, latitude - latSpan, longitude + lonSpan, latitude + latSpan, parcelId -> {
+            Position position = positions.get(parcelId);
+            if (position == null) {
+                return;
+            }
+            double distance = haversineKm(lat1, cosLat1, longitude, position.latitude(), position.longitude());
+            if (distance > radiusKm) {
+                return;
+            }
+            if (nearest.size() < limit) {
+                nearest.add(new Neighbour(parcelId, distance));
+            } else if (distance < nearest.peek().distanceKm()) {
+                nearest.poll();
+                nearest.add(new Neighbour(parcelId, distance));
+            }
+        });
+
+        List<Neighbour> result = new ArrayList<>(nearest);
+        result.sort(Comparator.comparingDouble(Neighbour::distanceKm));
+        return result;
+    }
+
+    /**
+     * Haversine distance in kilometers; the origin's latitude is passed pre-converted.
+     */
+    private static double haversineKm(double lat1, double cosLat1, double lon1, double lat2Deg, double lon2) {
+        double lat2 = Math.toRadians(lat2Deg);
+        double sinDLat = Math.sin((lat2 - lat1) / 2);
+        double sinDLon = Math.sin(Math.toRadians(lon2 - lon1) / 2);
+        double a = sinDLat * sinDLat + cosLat1 * Math.cos(lat2) * sinDLon * sinDLon;
+        return 2 * EARTH_RADIUS_KM * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    private void removeFromCell(long cell, String parcelId) {
+        cells.computeIfPresent(cell, (c, ids) -> {
+            ids.remove(parcelId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    private int cellX(double longitude) {
+        return (int) Math.floor(longitude / cellSize);
+    }
+
+    private int cellY(double latitude) {
+        return (int) Math.floor(latitude / cellSize);
+    }
+
+    private static long cellKey(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    public record Neighbour(String parcelId, double distanceKm) {
+    }
+
+    private record Position(double longitude, double latitude, long cell) {
+
+        boolean within(double minLon, double minLat, double maxLon, double maxLat) {
+            return longitude >= minLon && longitude <= maxLon && latitude >= minLat && latitude <= maxLat;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.routemaster.service;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.bulk.BulkWriteError;
+import com.routemaster.model.Parcel;
+import com.routemaster.websocket.JsonBroadcaster;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bulk parcel ingest for daily manifests.
+ * Reads a JSON array or NDJSON stream one parcel at a time, validates each one and
+ * inserts them in unordered bulk batches. Each batch is announced with a single summary
+ * message on /topic/parcels/bulk instead of one broadcast per parcel.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ParcelIngestService {
+
+    public static final String BULK_TOPIC = "/topic/parcels/bulk";
+
+    // Errors beyond this are counted but not listed in the response
+    private static final int MAX_REPORTED_ERRORS = 1000;
+
+    private final MongoTemplate mongoTemplate;
+    private final ObjectMapper objectMapper;
+    private final JsonBroadcaster jsonBroadcaster;
+    private final ParcelGridIndex gridIndex;
+    private final ParcelStatusCounters statusCounters;
+
+    @Value("${app.parcels.bulk.batch-size:1000}")
+    private int batchSize;
+
+    public BulkIngestResult ingest(InputStream input) throws IOException {
+        IngestRun run = new IngestRun();
+        long start = System.currentTimeMillis();
+
+        try (MappingIterator<Parcel> parcels = objectMapper.readerFor(Parcel.class).readValues(input)) {
+            int index = 0;
+            while (true) {
+                Parcel parcel;
+                try {
+                    if (!parcels.hasNextValue()) {
+                        break;
+                    }
+                    parcel = parcels.nextValue();
+                } catch (JsonProcessingException e) {
+                    // Mapping errors only affect one item; malformed JSON ends the stream
+                    run.fail(index++, null, "Invalid parcel: " + e.getOriginalMessage());
+                    if (e instanceof JsonParseException) {
+                        break;
+                    }
+                    continue;
+                }
+
+                String error = validate(parcel);
+                if (error != null) {
+                    run.fail(index, parcel.getTrackingNumber(), error);
+                } else {
+                    run.add(index, parcel);
+                    if (run.batch.size() >= batchSize) {
+                        insertBatch(run);
+                    }
+                }
+                index++;
+            }
+            run.received = index;
+        }
+        if (!run.batch.isEmpty()) {
+            insertBatch(run);
+        }
+
+        log.info("Bulk ingest: {} received, {} inserted, {} failed in {} ms",
+                run.received, run.inserted, run.failed, System.currentTimeMillis() - start);
+        return new BulkIngestResult(run.received, run.inserted, run.failed, run.errors);
+    }
+
+    private String validate(Parcel parcel) {
+        if (parcel == null) {
+            return "Parcel is empty";
+        }
+        if (parcel.getTrackingNumber() == null || parcel.getTrackingNumber().isBlank()) {
+            return "trackingNumber is required";
+        }
+        String coordinates = validateCoordinates("current", parcel.getCurrentLongitude(), parcel.getCurrentLatitude());
+        if (coordinates == null) {
+            coordinates = validateCoordinates("origin", parcel.getOriginLongitude(), parcel.getOriginLatitude());
+        }
+        if (coordinates == null) {
+            coordinates = validateCoordinates("destination", parcel.getDestinationLongitude(), parcel.getDestinationLatitude());
+        }
+        return coordinates;
+    }
+
+    private static String validateCoordinates(String name, Double longitude, Double latitude) {
+        if ((longitude == null) != (latitude == null)) {
+            return name + " location needs both longitude and latitude";
+        }
+        if (longitude != null && (longitude < -180 || longitude > 180 || latitude < -90 || latitude > 90)) {
+            return name + " location is out of range";
+        }
+        return null;
+    }
+
+    private void insertBatch(IngestRun run) {
+        List<Parcel> batch = run.batch;
+        Set<Integer> failedPositions = new HashSet<>();
+
+        try {
+            mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Parcel.class)
+                    .insert(batch)
+                    .execute();
+        } catch (BulkOperationException e) {
+            for (BulkWriteError error : e.getErrors()) {
+                failedPositions.add(error.getIndex());
+                run.fail(run.batchIndexes.get(error.getIndex()),
+                        batch.get(error.getIndex()).getTrackingNumber(), error.getMessage());
+            }
+        }
+
+        int inserted = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (failedPositions.contains(i)) {
+                continue;
+            }
+            Parcel parcel = batch.get(i);
+            if (parcel.getCurrentLongitude() != null) {
+                gridIndex.update(parcel.getId(), parcel.getCurrentLongitude(), parcel.getCurrentLatitude());
+            }
+            statusCounters.increment(parcel.getStatus());
+            inserted++;
+        }
+        run.inserted += inserted;
+        run.batches++;
+
+        jsonBroadcaster.publish(
+                new BulkBatchSummary(run.batches, inserted, failedPositions.size(), System.currentTimeMillis()), BULK_TOPIC);
+
+        batch.clear();
+        run.batchIndexes.clear();
+    }
+
+    /**
+     * State of one ingest request.
+     */
+    private static class IngestRun {
+        private final List<Parcel> batch = new ArrayList<>();
+        private final List<Integer> batchIndexes = new ArrayList<>();
+        private final List<ItemError> errors = new ArrayList<>();
+        private int received;
+        private int inserted;
+        private int failed;
+        private int batches;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+
+        void add(int index, Parcel parcel) {
+            // Ids are assigned up front so the index and counters can be updated without reading back.
+            // Auditing then treats the parcel as existing and would leave createdAt unset.
+            parcel.setId(new ObjectId().toHexString());
+            parcel.setCreatedAt(startedAt);
+            if (parcel.getStatus() == null) {
+                parcel.setStatus(Parcel.ParcelStatus.PENDING);
+            }
+            batch.add(parcel);
+            batchIndexes.add(index);
+        }
+
+        void fail(int index, String trackingNumber, String message) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(new ItemError(index, trackingNumber, message));
+            }
+        }
+    }
+
+    public record BulkIngestResult(int received, int inserted, int failed, List<ItemError> errors) {
+    }
+
+    public record ItemError(int index, String trackingNumber, String message) {
+    }
+
+    public record BulkBatchSummary(int batch, int inserted, int failed, long timestamp) {
+    }
+}
@@ -2,13 +2,35 @@ package com.routemaster.service;
 
 import com.routemaster.model.Parcel;
 import com.routemaster.repository.ParcelRepository;
+import com.routemaster.websocket.JsonBroadcaster;
+import com.routemaster.websocket.LocationBroadcaster;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.geo.Point;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
+import org.springframework.data.mongodb.core.geo.GeoJsonPolygon;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
@@ -16,25 +38,58 @@ import java.util.Optional;
 public class ParcelService {
 
     private final ParcelRepository parcelRepository;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final MongoTemplate mongoTemplate;
+    private final JsonBroadcaster jsonBroadcaster;
+    private final ParcelGridIndex gridIndex;
+    private final LocationBroadcaster locationBroadcaster;
+    private final ParcelCache parcelCache;
+    private final ParcelStatusCounters statusCounters;
+    private final ParcelTrackBuffer trackBuffer;
+    private final LocationSimulatorService simulatorService;
+
+    @Value("${app.locations.max-clock-skew:60000}")
+    private long maxClockSkew;
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int STREAM_BATCH_SIZE = 500;
+
+    /**
+     * Seed the spatial index with the current position of every parcel.
+     * Runs after the GeoJSON backfill so both lookup paths see the same parcels.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadSpatialIndex() {
+        backfillGeoJsonLocations();
+
+        Query query = new Query();
+        query.fields().include("currentLongitude", "currentLatitude");
+        try (Stream<Parcel> parcels = mongoTemplate.stream(query, Parcel.class)) {
+            parcels.forEach(this::indexLocation);
+        }
+        log.info("Spatial index loaded with {} parcels", gridIndex.size());
+    }
 
     public Parcel createParcel(Parcel parcel) {
         // ID not manually set -> Mongo generates it
         Parcel saved = parcelRepository.save(parcel);
+        indexLocation(saved);
+        parcelCache.put(saved);
+        statusCounters.increment(saved.getStatus());
         log.info("Created parcel: {}", saved.getTrackingNumber());
 
         // Broadcast new parcel to all subscribers
-        messagingTemplate.convertAndSend("/topic/parcels", saved);
+        jsonBroadcaster.publish(saved, "/topic/parcels");
 
         return saved;
     }
 
     public Optional<Parcel> getParcelById(String id) {
-        return parcelRepository.findById(id);
+        return parcelCache.getById(id, parcelRepository::findById);
     }
 
     public Optional<Parcel> getParcelByTrackingNumber(String trackingNumber) {
-        return parcelRepository.findByTrackingNumber(trackingNumber);
+        return parcelCache.getByTrackingNumber(trackingNumber,
+                parcelRepository::findById, parcelRepository::findByTrackingNumber);
     }
 
     public List<Parcel> getAllParcels() {
@@ -49,17 +104,91 @@ public class ParcelService {
         return parcelRepository.findByAssignedDriverId(driverId);
     }
 
+    public ParcelPage getParcelPage(String cursor, int limit) {
+        return findPage(new Criteria(), cursor, limit);
+    }
+
+    public ParcelPage getParcelPageByStatus(Parcel.ParcelStatus status, String cursor, int limit) {
+        return findPage(Criteria.where("status").is(status), cursor, limit);
+    }
+
+    public ParcelPage getParcelPageByDriver(String driverId, String cursor, int limit) {
+        return findPage(Criteria.where("assignedDriverId").is(driverId), cursor, limit);
+    }
+
+    /**
+     * Streams are backed by a live Mongo cursor and must be closed by the caller.
+     */
+    public Stream<Parcel> streamAllParcels() {
+        return streamParcels(new Criteria());
+    }
+
+    public Stream<Parcel> streamParcelsByStatus(Parcel.ParcelStatus status) {
+        return streamParcels(Criteria.where("status").is(status));
+    }
+
+    public Stream<Parcel> streamParcelsByDriver(String driverId) {
+        return streamParcels(Criteria.where("assignedDriverId").is(driverId));
+    }
+
+    /**
+     * Keyset pagination on _id: each page continues after the last id of the previous one,
+     * so every page is an index range scan no matter how deep the client has paged.
+     */
+    private ParcelPage findPage(Criteria filter, String cursor, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        Query query = new Query(filter);
+        if (cursor != null && !cursor.isBlank()) {
+            query.addCriteria(Criteria.where("_id").gt(decodeCursor(cursor)));
+        }
+        // Fetch one extra document to know whether another page exists
+        query.with(Sort.by(Sort.Direction.ASC, "_id")).limit(pageSize + 1);
+
+        List<Parcel> parcels = mongoTemplate.find(query, Parcel.class);
+        String nextCursor = null;
+        if (parcels.size() > pageSize) {
+            parcels = parcels.subList(0, pageSize);
+            nextCursor = encodeCursor(parcels.get(pageSize - 1).getId());
+        }
+        return new ParcelPage(parcels, nextCursor);
+    }
+
+    private Stream<Parcel> streamParcels(Criteria filter) {
+        Query query = new Query(filter).with(Sort.by(Sort.Direction.ASC, "_id"));
+        query.cursorBatchSize(STREAM_BATCH_SIZE);
+        return mongoTemplate.stream(query, Parcel.class);
+    }
+
+    private static String encodeCursor(String id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static ObjectId decodeCursor(String cursor) {
+        try {
+            return new ObjectId(new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
     public Parcel updateParcel(String id, Parcel parcel) {
         return parcelRepository.findById(id)
                 .map(existing -> {
                     parcel.setId(existing.getId());
+                    // The body carries no fix time; keep the stored one so later fixes are still ordered against it
+                    parcel.setLocationTimestamp(existing.getLocationTimestamp());
                     Parcel updated = parcelRepository.save(parcel);
+                    indexLocation(updated);
+                    parcelCache.invalidate(id);
+                    parcelCache.invalidateTrackingNumber(existing.getTrackingNumber());
+                    parcelCache.put(updated);
+                    statusCounters.transition(existing.getStatus(), updated.getStatus(), 1);
+                    if (updated.getStatus() != Parcel.ParcelStatus.IN_TRANSIT) {
+                        simulatorService.stopSimulating(id);
+                    }
 
-                    // Broadcast update to all subscribers
-                    messagingTemplate.convertAndSend("/topic/parcels", updated);
-
-                    // Also send to specific parcel channel
-                    messagingTemplate.convertAndSend("/topic/parcels/" + updated.getId(), updated);
+                    // Broadcast update to all subscribers and the parcel's own channel, encoded once
+                    jsonBroadcaster.publish(updated, "/topic/parcels", "/topic/parcels/" + updated.getId());
 
                     log.info("Updated parcel: {}", updated.getTrackingNumber());
                     return updated;
@@ -67,48 +196,187 @@ public class ParcelService {
                 .orElseThrow(() -> new RuntimeException("Parcel not found: " + id));
     }
 
-    public void updateParcelLocation(String id, double longitude, double latitude) {
-        parcelRepository.findById(id).ifPresent(parcel -> {
-            parcel.setCurrentLongitude(longitude);
-            parcel.setCurrentLatitude(latitude);
-            Parcel updated = parcelRepository.save(parcel);
+    /**
+     * Atomically set the current location with a single $set, without reading the document first.
+     * The write only applies when the fix is newer than the stored one, so a delayed GPS fix
+     * can never overwrite a more recent position. A fix stamped further ahead than the allowed
+     * clock skew is rejected, as it would block every later fix of the parcel.
+     *
+     * @param fixTimestamp epoch millis of the GPS fix, or null for "now"
+     */
+    public LocationWriteResult updateParcelLocation(String id, double longitude, double latitude, Long fixTimestamp) {
+        long now = System.currentTimeMillis();
+        if (fixTimestamp != null && fixTimestamp > now + maxClockSkew) {
+            return LocationWriteResult.FUTURE;
+        }
+        long timestamp = fixTimestamp != null ? fixTimestamp : now;
+
+        Query query = new Query(Criteria.where("_id").is(id).and("locationTimestamp").not().gte(timestamp));
+        query.fields().include("trackingNumber", "status");
+        Update update = new Update()
+                .set("currentLongitude", longitude)
+                .set("currentLatitude", latitude)
+                .set("currentLocation", new GeoJsonPoint(longitude, latitude))
+                .set("locationTimestamp", timestamp)
+                .currentDate("lastUpdated");
+
+        Parcel updated = mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), Parcel.class);
+        if (updated == null) {
+            return parcelRepository.existsById(id) ? LocationWriteResult.STALE : LocationWriteResult.NOT_FOUND;
+        }
+        gridIndex.update(id, longitude, latitude);
+        parcelCache.invalidate(id);
+        trackBuffer.record(id, longitude, latitude, timestamp);
+
+        // Push location update via WebSocket
+        jsonBroadcaster.publish(new LocationUpdate(id, longitude, latitude, timestamp), "/topic/locations/" + id);
+        locationBroadcaster.publishToSessions(List.of(new LocationSimulatorService.LocationUpdate(
+                id, updated.getTrackingNumber(), longitude, latitude,
+                updated.getStatus() != null ? updated.getStatus().name() : null, timestamp)));
+
+        log.debug("Updated location for parcel {}: [{}, {}]", id, longitude, latitude);
+        return LocationWriteResult.APPLIED;
+    }
+
+    /**
+     * Atomically change the status with a single $set and return the updated parcel.
+     */
+    public Optional<Parcel> updateParcelStatus(String id, Parcel.ParcelStatus status) {
+        Parcel previous = mongoTemplate.findAndModify(
+                Query.query(Criteria.where("_id").is(id)),
+                new Update().set("status", status).currentDate("lastUpdated"),
+                FindAndModifyOptions.options().returnNew(false),
+                Parcel.class);
+        if (previous == null) {
+            return Optional.empty();
+        }
+        statusCounters.transition(previous.getStatus(), status, 1);
+        parcelCache.invalidate(id);
+        if (status != Parcel.ParcelStatus.IN_TRANSIT) {
+            // Otherwise the simulator keeps moving it and broadcasting it as IN_TRANSIT
+            simulatorService.stopSimulating(id);
+        }
 
-            // Push location update via WebSocket
-            messagingTemplate.convertAndSend("/topic/locations/" + id,
-                    new LocationUpdate(id, longitude, latitude, System.currentTimeMillis()));
+        // The returned document is the pre-image; apply the change for the broadcast
+        previous.setStatus(status);
+        jsonBroadcaster.publish(previous, "/topic/parcels", "/topic/parcels/" + id);
 
-            log.debug("Updated location for parcel {}: [{}, {}]", id, longitude, latitude);
-        });
+        log.info("Parcel {} status changed to {}", previous.getTrackingNumber(), status);
+        return Optional.of(previous);
+    }
+
+    public List<ParcelTrackBuffer.TrackFix> getParcelTrack(String id, long since) {
+        return trackBuffer.getTrack(id, since);
     }
 
     public void deleteParcel(String id) {
-        parcelRepository.deleteById(id);
+        Parcel removed = mongoTemplate.findAndRemove(Query.query(Criteria.where("_id").is(id)), Parcel.class);
+        gridIndex.remove(id);
+        parcelCache.invalidate(id);
+        simulatorService.stopSimulating(id);
+        if (removed != null) {
+            statusCounters.decrement(removed.getStatus());
+        }
         log.info("Deleted parcel: {}", id);
     }
 
     /**
-     * Geospatial query logic.
-     * Note: For advanced geospatial queries, you should use Mongo geospatial
-     * indexes and Criteria queries.
-     * Here we can return a simple list or re-enable the logic if moving to proper
-     * GeoJSON types.
-     * For now, returning all for simplicity or implementing basic Haversine
-     * distance in memory if dataset is small,
-     * BUT since we migrated to Mongo, we can use MongoRepository's native
-     * geospatial capabilities if we used GeoJsonPoint.
-     * Given the current Parcel model uses lat/lon doubles, we'll keep it simple or
-     * fix it later.
+     * Parcels within radiusKm of the point, nearest first (Haversine distance).
+     * Served from the in-memory grid index; only the matching documents are loaded.
      */
-    public List<Parcel> findParcelsNearLocation(double longitude, double latitude, double radiusKm) {
-        // TODO: Implement proper geospatial search using MongoTemplate or switch Parcel
-        // to use GeoJsonPoint
-        log.info("Finding parcels near [{}, {}]", longitude, latitude);
-        // Temporary: return all parcels (filtering should be done via query)
-        return parcelRepository.findAll();
+    public List<Parcel> findParcelsNearLocation(double longitude, double latitude, double radiusKm, int limit) {
+        List<ParcelGridIndex.Neighbour> neighbours = gridIndex.findNearby(longitude, latitude, radiusKm, limit);
+        log.debug("Found {} parcels within {} km of [{}, {}]", neighbours.size(), radiusKm, longitude, latitude);
+        if (neighbours.isEmpty()) {
+            return List.of();
+        }
+
+        Map<String, Parcel> parcels = new HashMap<>();
+        parcelRepository.findAllById(neighbours.stream().map(ParcelGridIndex.Neighbour::parcelId).toList())
+                .forEach(parcel -> parcels.put(parcel.getId(), parcel));
+
+        List<Parcel> result = new ArrayList<>(neighbours.size());
+        for (ParcelGridIndex.Neighbour neighbour : neighbours) {
+            Parcel parcel = parcels.get(neighbour.parcelId());
+            if (parcel != null) {
+                result.add(parcel);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link #findParcelsNearLocation} but evaluated by Mongo with $nearSphere on the
+     * 2dsphere index, for datasets that do not fit the in-process index.
+     */
+    public List<Parcel> findParcelsNearLocationInDatabase(double longitude, double latitude, double radiusKm, int limit) {
+        Query query = new Query(Criteria.where("currentLocation")
+                .nearSphere(new GeoJsonPoint(longitude, latitude))
+                .maxDistance(radiusKm * 1000)) // meters for GeoJSON points
+                .limit(limit);
+        return mongoTemplate.find(query, Parcel.class);
+    }
+
+    /**
+     * Parcels whose current location lies inside the polygon, evaluated by Mongo with $geoWithin.
+     * The ring is a list of [longitude, latitude] pairs; it is closed automatically.
+     */
+    public List<Parcel> findParcelsWithinPolygon(List<List<Double>> ring, int limit) {
+        if (ring == null || ring.size() < 3) {
+            throw new IllegalArgumentException("A polygon needs at least three points");
+        }
+        List<Point> points = new ArrayList<>(ring.size() + 1);
+        for (List<Double> coordinate : ring) {
+            if (coordinate == null || coordinate.size() != 2 || coordinate.get(0) == null || coordinate.get(1) == null) {
+                throw new IllegalArgumentException("Polygon points must be [longitude, latitude] pairs");
+            }
+            points.add(new Point(coordinate.get(0), coordinate.get(1)));
+        }
+        if (!points.get(0).equals(points.get(points.size() - 1))) {
+            points.add(points.get(0));
+        }
+
+        Query query = new Query(Criteria.where("currentLocation").within(new GeoJsonPolygon(points))).limit(limit);
+        return mongoTemplate.find(query, Parcel.class);
+    }
+
+    /**
+     * Parcels written before currentLocation existed only have plain coordinates;
+     * derive the GeoJSON point for them inside Mongo so $nearSphere/$geoWithin can see them.
+     */
+    private void backfillGeoJsonLocations() {
+        Query missing = new Query(Criteria.where("currentLocation").exists(false)
+                .and("currentLongitude").ne(null)
+                .and("currentLatitude").ne(null));
+        AggregationUpdate update = AggregationUpdate.update()
+                .set("currentLocation").toValue(new Document("type", "Point")
+                        .append("coordinates", List.of("$currentLongitude", "$currentLatitude")));
+        long modified = mongoTemplate.updateMulti(missing, update, Parcel.class).getModifiedCount();
+        if (modified > 0) {
+            log.info("Backfilled currentLocation on {} parcels", modified);
+        }
+    }
+
+    private void indexLocation(Parcel parcel) {
+        if (parcel.getCurrentLongitude() != null && parcel.getCurrentLatitude() != null) {
+            gridIndex.update(parcel.getId(), parcel.getCurrentLongitude(), parcel.getCurrentLatitude());
+        } else {
+            gridIndex.remove(parcel.getId());
+        }
     }
 
     public long countParcelsByStatus(Parcel.ParcelStatus status) {
-        return parcelRepository.countByStatus(status);
+        return statusCounters.get(status);
+    }
+
+    public enum LocationWriteResult {
+        APPLIED,
+        STALE,
+        NOT_FOUND,
+        FUTURE
+    }
+
+    public record ParcelPage(List<Parcel> items, String nextCursor) {
     }
 
     public record LocationUpdate(String parcelId, double longitude, double latitude, long timestamp) {
@@ -0,0 +1,113 @@
+package com.routemaster.service;
+
+import com.routemaster.model.Parcel;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory parcel count per status, maintained on every status transition.
+ * Seeded with one $group aggregation at startup and periodically reconciled
+ * against Mongo to correct drift from writes that bypass the services.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ParcelStatusCounters {
+
+    private final MongoTemplate mongoTemplate;
+
+    private final Map<Parcel.ParcelStatus, LongAdder> counts = createCounters();
+
+    public long get(Parcel.ParcelStatus status) {
+        return counts.get(status).sum();
+    }
+
+    public void increment(Parcel.ParcelStatus status) {
+        add(status, 1);
+    }
+
+    public void decrement(Parcel.ParcelStatus status) {
+        add(status, -1);
+    }
+
+    public void transition(Parcel.ParcelStatus from, Parcel.ParcelStatus to, long parcels) {
+        if (from == to || parcels == 0) {
+            return;
+        }
+        add(from, -parcels);
+        add(to, parcels);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void seed() {
+        reconcile();
+        log.info("Parcel status counters seeded: {}", counts);
+    }
+
+    @Scheduled(fixedDelayString = "${app.stats.reconcile-interval:60000}",
+            initialDelayString = "${app.stats.reconcile-interval:60000}")
+    public void reconcile() {
+        // Drift is measured against the counts from before the aggregation, so transitions recorded
+        // while it runs stay on top of the corrected value. One whose write the aggregation already
+        // saw is counted twice until the next reconcile.
+        Map<Parcel.ParcelStatus, Long> before = new EnumMap<>(Parcel.ParcelStatus.class);
+        counts.forEach((status, counter) -> before.put(status, counter.sum()));
+
+        Map<Parcel.ParcelStatus, Long> actual = new EnumMap<>(Parcel.ParcelStatus.class);
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.group("status").count().as("count"));
+        for (Document row : mongoTemplate.aggregate(aggregation, Parcel.class, Document.class)) {
+            Object status = row.get("_id");
+            if (status == null) {
+                continue;
+            }
+            Parcel.ParcelStatus parsed = parse(status.toString());
+            if (parsed == null) {
+                log.warn("Ignoring {} parcels with unknown status {}", row.get("count"), status);
+                continue;
+            }
+            actual.put(parsed, ((Number) row.get("count")).longValue());
+        }
+
+        counts.forEach((status, counter) -> {
+            long drift = actual.getOrDefault(status, 0L) - before.get(status);
+            if (drift != 0) {
+                counter.add(drift);
+                log.debug("Corrected {} counter by {}", status, drift);
+            }
+        });
+    }
+
+    private static Parcel.ParcelStatus parse(String status) {
+        try {
+            return Parcel.ParcelStatus.valueOf(status);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void add(Parcel.ParcelStatus status, long delta) {
+        if (status != null) {
+            counts.get(status).add(delta);
+        }
+    }
+
+    private static Map<Parcel.ParcelStatus, LongAdder> createCounters() {
+        Map<Parcel.ParcelStatus, LongAdder> counters = new EnumMap<>(Parcel.ParcelStatus.class);
+        for (Parcel.ParcelStatus status : Parcel.ParcelStatus.values()) {
+            counters.put(status, new LongAdder());
+        }
+        return counters;
+    }
+}
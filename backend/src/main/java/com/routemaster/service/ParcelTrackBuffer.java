@@ -0,0 +1,247 @@
+package com.routemaster.service;
+
+import com.routemaster.model.TrackPoint;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Recent location history per parcel.
+ * The newest fixes of each parcel are kept in a fixed-size ring of primitive arrays; fixes
+ * pushed out of the ring are spilled to the parcel_tracks time-series collection in batches,
+ * on a schedule and whenever a full batch is queued. Fixes that arrive out of order are kept in
+ * timestamp order. Spilled fixes become visible to queries once their spill has run.
+ */
+@Component
+@Slf4j
+public class ParcelTrackBuffer {
+
+    private final MongoTemplate mongoTemplate;
+    private final int capacity;
+    private final long idleEvictionMillis;
+    private final int spillBatchSize;
+    private final BlockingQueue<TrackPoint> spillQueue;
+    private final Counter droppedCounter;
+    private final AtomicInteger droppedSinceSpill = new AtomicInteger();
+    private final AtomicBoolean spillPending = new AtomicBoolean();
+    private final ExecutorService spillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "track-spill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<String, Track> tracks = new ConcurrentHashMap<>();
+
+    public ParcelTrackBuffer(MongoTemplate mongoTemplate,
+                             @Value("${app.tracks.capacity:64}") int capacity,
+                             @Value("${app.tracks.spill-queue-size:100000}") int spillQueueSize,
+                             @Value("${app.tracks.spill-batch-size:10000}") int spillBatchSize,
+                             @Value("${app.tracks.idle-eviction:600000}") long idleEvictionMillis,
+                             MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.capacity = capacity;
+        this.idleEvictionMillis = idleEvictionMillis;
+        this.spillBatchSize = spillBatchSize;
+        this.spillQueue = new ArrayBlockingQueue<>(spillQueueSize);
+        this.droppedCounter = Counter.builder("routemaster.tracks.spill.dropped")
+                .description("Track points dropped because the spill queue was full")
+                .register(meterRegistry);
+        Gauge.builder("routemaster.tracks.spill.queue.depth", spillQueue, BlockingQueue::size)
+                .description("Track points waiting to be written to parcel_tracks")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void createCollection() {
+        if (!mongoTemplate.collectionExists(TrackPoint.class)) {
+            mongoTemplate.createCollection(TrackPoint.class);
+            log.info("Created time-series collection parcel_tracks");
+        }
+    }
+
+    public void record(String parcelId, double longitude, double latitude, long timestamp) {
+        // Inside compute() so it cannot race with evictIdleTracks removing the same track
+        tracks.compute(parcelId, (id, track) -> {
+            Track target = track != null ? track : new Track(capacity);
+            target.add(id, longitude, latitude, timestamp, this);
+            return target;
+        });
+    }
+
+    /**
+     * Fixes of the parcel at or after since (epoch millis), oldest first.
+     * Points still in memory are served from the ring; older ones are read from parcel_tracks.
+     */
+    public List<TrackFix> getTrack(String parcelId, long since) {
+        List<TrackFix> recent = new ArrayList<>();
+        long oldestInMemory = Long.MAX_VALUE;
+        Track track = tracks.get(parcelId);
+        if (track != null) {
+            oldestInMemory = track.collect(since, recent);
+        }
+        if (since >= oldestInMemory) {
+            return recent;
+        }
+
+        Query query = new Query(Criteria.where("parcelId").is(parcelId)
+                .and("timestamp").gte(Instant.ofEpochMilli(since)).lt(Instant.ofEpochMilli(oldestInMemory)))
+                .with(Sort.by(Sort.Direction.ASC, "timestamp"));
+        List<TrackFix> result = new ArrayList<>();
+        for (TrackPoint point : mongoTemplate.find(query, TrackPoint.class)) {
+            result.add(new TrackFix(point.getTimestamp().toEpochMilli(), point.getLongitude(), point.getLatitude()));
+        }
+        result.addAll(recent);
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${app.tracks.spill-interval:5000}")
+    public void spill() {
+        int dropped = droppedSinceSpill.getAndSet(0);
+        if (dropped > 0) {
+            log.warn("Track spill queue was full, dropped {} points", dropped);
+        }
+        List<TrackPoint> batch = new ArrayList<>(Math.min(spillQueue.size(), spillBatchSize));
+        while (spillQueue.drainTo(batch, spillBatchSize) > 0) {
+            try {
+                mongoTemplate.insert(batch, TrackPoint.class);
+                log.debug("Spilled {} track points", batch.size());
+            } catch (Exception e) {
+                log.error("Failed to spill {} track points", batch.size(), e);
+            }
+            batch.clear();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        spillExecutor.shutdown();
+    }
+
+    /**
+     * Drop tracks of parcels that stopped moving, spilling their points first.
+     */
+    @Scheduled(fixedDelayString = "${app.tracks.idle-eviction:600000}")
+    public void evictIdleTracks() {
+        long cutoff = System.currentTimeMillis() - idleEvictionMillis;
+        for (String parcelId : tracks.keySet()) {
+            tracks.computeIfPresent(parcelId, (id, track) -> track.spillIfIdle(id, cutoff, this) ? null : track);
+        }
+    }
+
+    private void spillPoint(String parcelId, long timestamp, double longitude, double latitude) {
+        if (!spillQueue.offer(new TrackPoint(null, parcelId, Instant.ofEpochMilli(timestamp), longitude, latitude))) {
+            droppedCounter.increment();
+            droppedSinceSpill.incrementAndGet();
+        }
+        // Drain by size as well as on the schedule, so a high fix rate does not fill the queue
+        if (spillQueue.size() >= spillBatchSize && spillPending.compareAndSet(false, true)) {
+            spillExecutor.execute(() -> {
+                spillPending.set(false);
+                spill();
+            });
+        }
+    }
+
+    /**
+     * Ring buffer of one parcel's fixes in primitive columns, kept in timestamp order.
+     * Fixes arriving late are inserted at their place; one older than everything held in a full
+     * ring goes straight to storage.
+     */
+    private static class Track {
+        private final long[] timestamps;
+        private final double[] longitudes;
+        private final double[] latitudes;
+        private int start;
+        private int size;
+
+        Track(int capacity) {
+            timestamps = new long[capacity];
+            longitudes = new double[capacity];
+            latitudes = new double[capacity];
+        }
+
+        private int slot(int position) {
+            return (start + position) % timestamps.length;
+        }
+
+        synchronized void add(String parcelId, double longitude, double latitude, long timestamp, ParcelTrackBuffer owner) {
+            if (size == timestamps.length) {
+                if (timestamp < timestamps[start]) {
+                    owner.spillPoint(parcelId, timestamp, longitude, latitude);
+                    return;
+                }
+                // The oldest fix moves to storage before its slot is reused
+                owner.spillPoint(parcelId, timestamps[start], longitudes[start], latitudes[start]);
+                start = (start + 1) % timestamps.length;
+                size--;
+            }
+            // Shift newer fixes up by one; in-order fixes skip the loop
+            int position = size;
+            while (position > 0 && timestamps[slot(position - 1)] > timestamp) {
+                int from = slot(position - 1);
+                int to = slot(position);
+                timestamps[to] = timestamps[from];
+                longitudes[to] = longitudes[from];
+                latitudes[to] = latitudes[from];
+                position--;
+            }
+            int target = slot(position);
+            timestamps[target] = timestamp;
+            longitudes[target] = longitude;
+            latitudes[target] = latitude;
+            size++;
+        }
+
+        /**
+         * Append fixes at or after since to the list, oldest first.
+         *
+         * @return timestamp of the oldest fix held, or Long.MAX_VALUE when empty
+         */
+        synchronized long collect(long since, List<TrackFix> out) {
+            for (int i = 0; i < size; i++) {
+                int slot = slot(i);
+                if (timestamps[slot] >= since) {
+                    out.add(new TrackFix(timestamps[slot], longitudes[slot], latitudes[slot]));
+                }
+            }
+            return size > 0 ? timestamps[start] : Long.MAX_VALUE;
+        }
+
+        synchronized boolean spillIfIdle(String parcelId, long cutoff, ParcelTrackBuffer owner) {
+            if (size > 0 && timestamps[slot(size - 1)] >= cutoff) {
+                return false;
+            }
+            for (int i = 0; i < size; i++) {
+                int slot = slot(i);
+                owner.spillPoint(parcelId, timestamps[slot], longitudes[slot], latitudes[slot]);
+            }
+            size = 0;
+            return true;
+        }
+    }
+
+    public record TrackFix(long timestamp, double longitude, double latitude) {
+    }
+}
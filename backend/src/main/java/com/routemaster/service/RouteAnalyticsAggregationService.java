@@ -0,0 +1,308 @@
+package com.routemaster.service;
+
+import com.routemaster.batch.RouteAnalyticsKernel;
+import com.routemaster.batch.RouteAnalyticsProcessor;
+import com.routemaster.model.RouteAnalytics;
+import com.routemaster.model.RouteLog;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.aggregation.TypedAggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * Computes the daily route analytics inside MongoDB instead of in the batch processor.
+ * One pipeline matches the day's route logs on the date index, reduces each route's points to
+ * its distance and moving time with the same Haversine as {@link RouteAnalyticsKernel}, takes
+ * speeds with $avg/$max and merges the results into route_analytics on (routeId, date).
+ * Only the results travel over the wire, not the route logs. The documents are the ones
+ * {@link RouteAnalyticsProcessor} and the batch writer produce, apart from _id and processedAt.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RouteAnalyticsAggregationService {
+
+    // Both sides use double arithmetic in a different order, so allow rounding differences
+    private static final double MAX_DELTA = 1e-6;
+
+    // Generated per document and per run
+    private static final Set<String> UNCOMPARED_FIELDS = Set.of("_id", "processedAt");
+
+    // Routes without points get no distance, speed or duration fields, like in the processor
+    private static final Document SET_HAS_LOCATIONS = Document.parse("""
+            { $set: { hasLocations: { $gt: [{ $size: { $ifNull: ["$locations", []] } }, 0] } } }
+            """);
+
+    // One output document per route log, with the fields RouteAnalyticsProcessor sets
+    private static final Document PROJECT_ANALYTICS = Document.parse("""
+            {
+              $project: {
+                _id: 0,
+                routeId: 1,
+                driverId: 1,
+                vehicleId: 1,
+                date: 1,
+                hasLocations: 1,
+                route: {
+                  $reduce: {
+                    input: {
+                      $filter: {
+                        input: { $ifNull: ["$locations", []] },
+                        cond: { $and: [{ $ne: ["$$this.latitude", null] }, { $ne: ["$$this.longitude", null] }] }
+                      }
+                    },
+                    initialValue: { distance: 0, movingMillis: 0, lat: null, lon: null, cos: null, time: null },
+                    in: {
+                      $let: {
+                        vars: {
+                          lat: { $degreesToRadians: "$$this.latitude" },
+                          lon: { $degreesToRadians: "$$this.longitude" },
+                          cos: { $cos: { $degreesToRadians: "$$this.latitude" } }
+                        },
+                        in: {
+                          $let: {
+                            vars: {
+                              segment: {
+                                $cond: [
+                                  { $eq: ["$$value.lat", null] },
+                                  0,
+                                  {
+                                    $let: {
+                                      vars: {
+                                        a: {
+                                          $add: [
+                                            { $pow: [{ $sin: { $divide: [{ $subtract: ["$$lat", "$$value.lat"] }, 2] } }, 2] },
+                                            {
+                                              $multiply: [
+                                                "$$value.cos", "$$cos",
+                                                { $pow: [{ $sin: { $divide: [{ $subtract: ["$$lon", "$$value.lon"] }, 2] } }, 2] }
+                                              ]
+                                            }
+                                          ]
+                                        }
+                                      },
+                                      in: { $multiply: [12742, { $atan2: [{ $sqrt: "$$a" }, { $sqrt: { $subtract: [1, "$$a"] } }] }] }
+                                    }
+                                  }
+                                ]
+                              },
+                              elapsed: { $subtract: ["$$this.timestamp", "$$value.time"] }
+                            },
+                            in: {
+                              distance: { $add: ["$$value.distance", "$$segment"] },
+                              movingMillis: {
+                                $add: [
+                                  "$$value.movingMillis",
+                                  {
+                                    $cond: [
+                                      { $and: [
+                                        { $gt: ["$$elapsed", 0] },
+                                        { $gte: [{ $multiply: ["$$segment", 3600000] }, { $multiply: ["$$elapsed", 2] }] }
+                                      ] },
+                                      "$$elapsed",
+                                      0
+                                    ]
+                                  }
+                                ]
+                              },
+                              lat: "$$lat",
+                              lon: "$$lon",
+                              cos: "$$cos",
+                              time: "$$this.timestamp"
+                            }
+                          }
+                        }
+                      }
+                    }
+                  }
+                },
+                averageSpeed: { $cond: ["$hasLocations", { $ifNull: [{ $avg: "$locations.speed" }, 0] }, "$$REMOVE"] },
+                maxSpeed: { $cond: ["$hasLocations", { $ifNull: [{ $max: "$locations.speed" }, 0] }, "$$REMOVE"] },
+                totalDurationMinutes: {
+                  $let: {
+                    vars: {
+                      first: { $arrayElemAt: [{ $ifNull: ["$locations", []] }, 0] },
+                      last: { $arrayElemAt: [{ $ifNull: ["$locations", []] }, -1] }
+                    },
+                    in: {
+                      $cond: [
+                        { $and: [
+                          { $gt: [{ $size: { $ifNull: ["$locations", []] } }, 1] },
+                          { $ne: [{ $ifNull: ["$$first.timestamp", null] }, null] },
+                          { $ne: [{ $ifNull: ["$$last.timestamp", null] }, null] }
+                        ] },
+                        { $toLong: { $trunc: { $divide: [{ $subtract: ["$$last.timestamp", "$$first.timestamp"] }, 60000] } } },
+                        "$$REMOVE"
+                      ]
+                    }
+                  }
+                }
+              }
+            }
+            """);
+
+    private static final Document SET_DERIVED = Document.parse("""
+            {
+              $set: {
+                totalDistance: { $cond: ["$hasLocations", "$route.distance", "$$REMOVE"] },
+                movingDurationMinutes: {
+                  $cond: ["$hasLocations", { $toLong: { $trunc: { $divide: ["$route.movingMillis", 60000] } } }, "$$REMOVE"]
+                },
+                fuelEfficiency: {
+                  $cond: [
+                    { $and: [{ $gt: ["$route.distance", 0] }, { $gt: ["$averageSpeed", 0] }] },
+                    { $divide: ["$route.distance", { $multiply: ["$averageSpeed", 0.1] }] },
+                    "$$REMOVE"
+                  ]
+                },
+                totalStops: 0,
+                deliveriesCompleted: 0,
+                deliveriesFailed: 0,
+                processedAt: "$$NOW"
+              }
+            }
+            """);
+
+    static {
+        // Same type hint the converter writes for the processor's documents
+        SET_DERIVED.get("$set", Document.class).append("_class", RouteAnalytics.class.getName());
+    }
+
+    private static final Document UNSET_WORK_FIELDS = new Document("$unset", List.of("route", "hasLocations"));
+
+    // Needs the unique (routeId, date) index on route_analytics, see RouteAnalyticsIndexMigration
+    private static final Document MERGE_INTO_ANALYTICS = Document.parse("""
+            {
+              $merge: {
+                into: "route_analytics",
+                on: ["routeId", "date"],
+                whenMatched: "replace",
+                whenNotMatched: "insert"
+              }
+            }
+            """);
+
+    private final MongoTemplate mongoTemplate;
+    private final RouteAnalyticsProcessor routeAnalyticsProcessor;
+
+    /**
+     * Compute the day's analytics in MongoDB and upsert them into route_analytics.
+     */
+    public void mergeDay(LocalDate date) {
+        long start = System.nanoTime();
+        mongoTemplate.aggregate(pipeline(date, true), Document.class);
+        log.info("Merged route analytics for {} in MongoDB in {} ms", date, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /**
+     * Compute the day's analytics both ways without writing them and report how the documents and
+     * runtimes differ. The Java side reads the route logs and runs the batch processor; its results
+     * are converted to the documents the batch writer would store and compared field by field.
+     */
+    public Comparison compare(LocalDate date) {
+        long start = System.nanoTime();
+        Map<String, Document> pushdown = new HashMap<>();
+        for (Document result : mongoTemplate.aggregate(pipeline(date, false), Document.class)) {
+            pushdown.put(result.getString("routeId"), result);
+        }
+        long pushdownMillis = (System.nanoTime() - start) / 1_000_000;
+
+        start = System.nanoTime();
+        Map<String, Document> java = new HashMap<>();
+        Query query = Query.query(Criteria.where("date").is(date));
+        query.fields().include("routeId", "driverId", "vehicleId", "date", "locations.timestamp",
+                "locations.longitude", "locations.latitude", "locations.speed");
+        try (Stream<RouteLog> routeLogs = mongoTemplate.stream(query, RouteLog.class)) {
+            routeLogs.forEach(routeLog -> {
+                Document document = new Document();
+                mongoTemplate.getConverter().write(routeAnalyticsProcessor.process(routeLog), document);
+                java.put(routeLog.getRouteId(), document);
+            });
+        }
+        long javaMillis = (System.nanoTime() - start) / 1_000_000;
+
+        List<String> mismatched = new ArrayList<>();
+        Set<String> mismatchedFields = new TreeSet<>();
+        double maxDelta = 0;
+        for (Map.Entry<String, Document> entry : java.entrySet()) {
+            Document other = pushdown.get(entry.getKey());
+            if (other == null) {
+                mismatched.add(entry.getKey());
+                continue;
+            }
+            Set<String> fields = new HashSet<>(entry.getValue().keySet());
+            fields.addAll(other.keySet());
+            fields.removeAll(UNCOMPARED_FIELDS);
+            boolean matches = true;
+            for (String field : fields) {
+                Object expected = entry.getValue().get(field);
+                Object actual = other.get(field);
+                if (expected instanceof Number a && actual instanceof Number b) {
+                    double delta = Math.abs(a.doubleValue() - b.doubleValue());
+                    maxDelta = Math.max(maxDelta, delta);
+                    if (delta <= MAX_DELTA) {
+                        continue;
+                    }
+                } else if (Objects.equals(expected, actual)) {
+                    continue;
+                }
+                // Also catches a field that only one side wrote
+                mismatchedFields.add(field);
+                matches = false;
+            }
+            if (!matches) {
+                mismatched.add(entry.getKey());
+            }
+        }
+        pushdown.keySet().stream().filter(routeId -> !java.containsKey(routeId)).forEach(mismatched::add);
+
+        return new Comparison(date, java.size(), pushdown.size(), javaMillis, pushdownMillis, maxDelta,
+                mismatched.size(), List.copyOf(mismatchedFields), mismatched.stream().limit(20).toList());
+    }
+
+    private static TypedAggregation<RouteLog> pipeline(LocalDate date, boolean merge) {
+        List<AggregationOperation> operations = new ArrayList<>();
+        // Served from the (date, ...) index; the date is converted like in repository queries
+        operations.add(Aggregation.match(Criteria.where("date").is(date)));
+        operations.add(context -> SET_HAS_LOCATIONS);
+        operations.add(context -> PROJECT_ANALYTICS);
+        operations.add(context -> SET_DERIVED);
+        operations.add(context -> UNSET_WORK_FIELDS);
+        if (merge) {
+            operations.add(context -> MERGE_INTO_ANALYTICS);
+        }
+        return Aggregation.newAggregation(RouteLog.class, operations);
+    }
+
+    /**
+     * @param mismatchedRouteIds at most the first 20
+     */
+    public record Comparison(
+            LocalDate date,
+            int javaRoutes,
+            int pushdownRoutes,
+            long javaMillis,
+            long pushdownMillis,
+            double maxNumericDelta,
+            int mismatchedRoutes,
+            List<String> mismatchedFields,
+            List<String> mismatchedRouteIds) {
+    }
+}
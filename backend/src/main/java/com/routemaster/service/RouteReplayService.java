@@ -0,0 +1,235 @@
+package com.routemaster.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.routemaster.model.RouteLog;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Downsampled replay of logged routes.
+ * Points are reduced with Douglas-Peucker at a tolerance of about one screen pixel at the
+ * client's zoom level, or to one point per time bucket. Results are cached per
+ * (route, date, method, tolerance); zoom levels are whole numbers so the key space stays small.
+ * Hit/miss counts are published as cache.gets{cache=routes.replay}.
+ */
+@Service
+public class RouteReplayService {
+
+    public static final int MAX_ZOOM = 22;
+
+    // Route ids per lookup of uncached logs when streaming a day
+    private static final int STREAM_BATCH_SIZE = 100;
+
+    private final MongoTemplate mongoTemplate;
+    private final double pixelTolerance;
+    private final Cache<ReplayKey, RouteReplay> cache;
+
+    public RouteReplayService(MongoTemplate mongoTemplate,
+                              @Value("${app.cache.route-replay.max-size:20000}") long maxSize,
+                              @Value("${app.cache.route-replay.ttl:10m}") Duration ttl,
+                              @Value("${app.cache.route-replay.pixel-tolerance:1.0}") double pixelTolerance,
+                              MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.pixelTolerance = pixelTolerance;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "routes.replay");
+    }
+
+    /**
+     * Replay of one route; without a date the most recent log of the route is used.
+     */
+    public Optional<RouteReplay> getReplay(String routeId, LocalDate date, int zoom, Method method, long bucketSeconds) {
+        ReplayKey key = key(routeId, date, zoom, method, bucketSeconds);
+        // A null from the mapping function is not cached, so unknown routes are looked up again
+        return Optional.ofNullable(cache.get(key, k -> {
+            Query query = new Query(Criteria.where("routeId").is(routeId));
+            if (date != null) {
+                query.addCriteria(Criteria.where("date").is(date));
+            }
+            query.with(Sort.by(Sort.Direction.DESC, "date")).limit(1);
+            RouteLog routeLog = mongoTemplate.findOne(query, RouteLog.class);
+            return routeLog != null ? simplify(routeLog, k) : null;
+        }));
+    }
+
+    /**
+     * Replays of every route logged on the date, optionally for one driver, read from a cursor.
+     * The cursor only carries route ids; cached replays are served as they are, and the full
+     * logs of uncached routes are loaded per batch of ids. Callers must close the stream.
+     */
+    public Stream<RouteReplay> streamDay(LocalDate date, String driverId, int zoom, Method method, long bucketSeconds) {
+        Criteria criteria = Criteria.where("date").is(date);
+        if (driverId != null) {
+            criteria = criteria.and("driverId").is(driverId);
+        }
+        Query query = new Query(criteria).with(Sort.by(Sort.Direction.ASC, "routeId"));
+        query.fields().include("routeId");
+        Stream<RouteLog> routeIds = mongoTemplate.stream(query, RouteLog.class);
+        Iterator<RouteLog> ids = routeIds.iterator();
+
+        Iterator<RouteReplay> replays = new Iterator<>() {
+            private final Deque<RouteReplay> ready = new ArrayDeque<>();
+
+            @Override
+            public boolean hasNext() {
+                while (ready.isEmpty() && ids.hasNext()) {
+                    List<String> batch = new ArrayList<>(STREAM_BATCH_SIZE);
+                    while (batch.size() < STREAM_BATCH_SIZE && ids.hasNext()) {
+                        batch.add(ids.next().getRouteId());
+                    }
+                    ready.addAll(resolve(batch, date, zoom, method, bucketSeconds));
+                }
+                return !ready.isEmpty();
+            }
+
+            @Override
+            public RouteReplay next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return ready.poll();
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(replays, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(routeIds::close);
+    }
+
+    /**
+     * Replays of the routes in order, loading the logs of the uncached ones with one query.
+     */
+    private List<RouteReplay> resolve(List<String> routeIds, LocalDate date, int zoom, Method method, long bucketSeconds) {
+        Map<String, RouteReplay> cached = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String routeId : routeIds) {
+            RouteReplay replay = cache.getIfPresent(key(routeId, date, zoom, method, bucketSeconds));
+            if (replay != null) {
+                cached.put(routeId, replay);
+            } else {
+                missing.add(routeId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Query query = new Query(Criteria.where("date").is(date).and("routeId").in(missing));
+            for (RouteLog routeLog : mongoTemplate.find(query, RouteLog.class)) {
+                cached.computeIfAbsent(routeLog.getRouteId(), routeId -> cache.get(
+                        key(routeId, date, zoom, method, bucketSeconds), k -> simplify(routeLog, k)));
+            }
+        }
+
+        List<RouteReplay> replays = new ArrayList<>(routeIds.size());
+        for (String routeId : routeIds) {
+            RouteReplay replay = cached.get(routeId);
+            if (replay != null) {
+                replays.add(replay);
+            }
+        }
+        return replays;
+    }
+
+    /**
+     * Drop all cached replays, e.g. after route logs were regenerated.
+     */
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * Degrees covered by pixelTolerance screen pixels at the zoom level of a 256px tile pyramid.
+     */
+    public double toleranceForZoom(int zoom) {
+        return pixelTolerance * 360.0 / (256.0 * (1L << zoom));
+    }
+
+    private static ReplayKey key(String routeId, LocalDate date, int zoom, Method method, long bucketSeconds) {
+        int z = Math.max(0, Math.min(zoom, MAX_ZOOM));
+        // The unused parameter of the chosen method is left out so it does not split the cache
+        return method == Method.TIME_BUCKET
+                ? new ReplayKey(routeId, date, method, 0, Math.max(1, bucketSeconds))
+                : new ReplayKey(routeId, date, method, z, 0);
+    }
+
+    private RouteReplay simplify(RouteLog routeLog, ReplayKey key) {
+        List<RouteLog.LocationPoint> locations = routeLog.getLocations() != null ? routeLog.getLocations() : List.of();
+        int n = 0;
+        long[] timestamps = new long[locations.size()];
+        double[] lon = new double[locations.size()];
+        double[] lat = new double[locations.size()];
+        ZoneId zone = ZoneId.systemDefault();
+        for (RouteLog.LocationPoint point : locations) {
+            if (point.getLongitude() == null || point.getLatitude() == null) {
+                continue;
+            }
+            timestamps[n] = point.getTimestamp() != null ? point.getTimestamp().atZone(zone).toInstant().toEpochMilli() : 0;
+            lon[n] = point.getLongitude();
+            lat[n] = point.getLatitude();
+            n++;
+        }
+        if (n < locations.size()) {
+            timestamps = Arrays.copyOf(timestamps, n);
+            lon = Arrays.copyOf(lon, n);
+            lat = Arrays.copyOf(lat, n);
+        }
+
+        double tolerance;
+        int[] kept;
+        if (key.method() == Method.TIME_BUCKET) {
+            tolerance = key.bucketSeconds();
+            kept = RouteSimplifier.timeBuckets(timestamps, key.bucketSeconds() * 1000);
+        } else {
+            tolerance = toleranceForZoom(key.zoom());
+            kept = RouteSimplifier.douglasPeucker(lon, lat, tolerance);
+        }
+
+        List<ReplayPoint> points = new ArrayList<>(kept.length);
+        for (int i : kept) {
+            points.add(new ReplayPoint(timestamps[i], lon[i], lat[i]));
+        }
+        return new RouteReplay(routeLog.getRouteId(), routeLog.getDriverId(), routeLog.getVehicleId(),
+                routeLog.getDate(), key.method(), tolerance, locations.size(), points);
+    }
+
+    public enum Method {
+        DOUGLAS_PEUCKER,
+        TIME_BUCKET
+    }
+
+    private record ReplayKey(String routeId, LocalDate date, Method method, int zoom, long bucketSeconds) {
+    }
+
+    // tolerance is in degrees for DOUGLAS_PEUCKER and in seconds for TIME_BUCKET
+    public record RouteReplay(String routeId, String driverId, String vehicleId, LocalDate date,
+                              Method method, double tolerance, int originalPoints, List<ReplayPoint> points) {
+    }
+
+    public record ReplayPoint(long timestamp, double longitude, double latitude) {
+    }
+}
@@ -0,0 +1,118 @@
+package com.routemaster.service;
+
+import java.util.Arrays;
+
+/**
+ * Polyline simplification over primitive coordinate arrays.
+ * Both methods always keep the first and last point and return the indexes kept, in order.
+ */
+public final class RouteSimplifier {
+
+    private RouteSimplifier() {
+    }
+
+    /**
+     * Douglas-Peucker: drop every point that lies within tolerance (degrees) of the segment
+     * between the points kept around it. Iterative, so long routes cannot overflow the stack.
+     * Longitudes are scaled by cos(latitude) so the tolerance is roughly isotropic.
+     */
+    public static int[] douglasPeucker(double[] lon, double[] lat, double tolerance) {
+        int n = lon.length;
+        if (n <= 2 || tolerance <= 0) {
+            return identity(n);
+        }
+
+        double lonScale = Math.cos(Math.toRadians(lat[0]));
+        double tolerance2 = tolerance * tolerance;
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+
+        int[] stack = new int[2 * n];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = n - 1;
+
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+
+            double ax = lon[first] * lonScale;
+            double ay = lat[first];
+            double dx = lon[last] * lonScale - ax;
+            double dy = lat[last] - ay;
+            double length2 = dx * dx + dy * dy;
+
+            double maxDistance2 = -1;
+            int farthest = -1;
+            for (int i = first + 1; i < last; i++) {
+                double px = lon[i] * lonScale - ax;
+                double py = lat[i] - ay;
+                double distance2;
+                if (length2 == 0) {
+                    distance2 = px * px + py * py;
+                } else {
+                    // Squared distance from the segment, clamped to its end points
+                    double t = Math.max(0, Math.min(1, (px * dx + py * dy) / length2));
+                    double ex = px - t * dx;
+                    double ey = py - t * dy;
+                    distance2 = ex * ex + ey * ey;
+                }
+                if (distance2 > maxDistance2) {
+                    maxDistance2 = distance2;
+                    farthest = i;
+                }
+            }
+
+            if (farthest != -1 && maxDistance2 > tolerance2) {
+                keep[farthest] = true;
+                stack[top++] = first;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = last;
+            }
+        }
+        return indexesOf(keep);
+    }
+
+    /**
+     * Keep the first point of every time bucket of bucketMillis.
+     */
+    public static int[] timeBuckets(long[] timestamps, long bucketMillis) {
+        int n = timestamps.length;
+        if (n <= 2 || bucketMillis <= 0) {
+            return identity(n);
+        }
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        long currentBucket = Math.floorDiv(timestamps[0], bucketMillis);
+        for (int i = 1; i < n - 1; i++) {
+            long bucket = Math.floorDiv(timestamps[i], bucketMillis);
+            if (bucket != currentBucket) {
+                keep[i] = true;
+                currentBucket = bucket;
+            }
+        }
+        return indexesOf(keep);
+    }
+
+    private static int[] indexesOf(boolean[] keep) {
+        int[] indexes = new int[keep.length];
+        int count = 0;
+        for (int i = 0; i < keep.length; i++) {
+            if (keep[i]) {
+                indexes[count++] = i;
+            }
+        }
+        return Arrays.copyOf(indexes, count);
+    }
+
+    private static int[] identity(int n) {
+        int[] indexes = new int[n];
+        for (int i = 0; i < n; i++) {
+            indexes[i] = i;
+        }
+        return indexes;
+    }
+}
@@ -0,0 +1,229 @@
+package com.routemaster.service;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.routemaster.model.Parcel;
+import com.routemaster.websocket.LocationBroadcaster;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingest of driver GPS fixes sent over STOMP.
+ * Fixes are validated and put on a bounded queue; whatever does not fit is rejected and
+ * reported back so the device can retry later. A single drain thread takes everything
+ * queued, coalesces it to the newest fix per parcel and writes those with one conditional
+ * bulk update. Only parcels whose write matched, i.e. that exist and had an older fix, are
+ * then passed on to the index, track and broadcast stages.
+ */
+@Service
+@Slf4j
+public class TelemetryIngestService {
+
+    private final MongoTemplate mongoTemplate;
+    private final ParcelCache parcelCache;
+    private final ParcelGridIndex gridIndex;
+    private final ParcelTrackBuffer trackBuffer;
+    private final LocationBroadcaster locationBroadcaster;
+    private final BlockingQueue<TelemetryFix> queue;
+    private final Counter acceptedCounter;
+    private final Counter rejectedCounter;
+    private final Counter unmatchedCounter;
+
+    @Value("${app.telemetry.drain-batch-size:10000}")
+    private int drainBatchSize;
+
+    @Value("${app.locations.max-clock-skew:60000}")
+    private long maxClockSkew;
+
+    private volatile boolean running;
+    private Thread drainThread;
+
+    public TelemetryIngestService(MongoTemplate mongoTemplate,
+                                  ParcelCache parcelCache,
+                                  ParcelGridIndex gridIndex,
+                                  ParcelTrackBuffer trackBuffer,
+                                  LocationBroadcaster locationBroadcaster,
+                                  @Value("${app.telemetry.queue-capacity:100000}") int queueCapacity,
+                                  MeterRegistry meterRegistry) {
+        this.mongoTemplate = mongoTemplate;
+        this.parcelCache = parcelCache;
+        this.gridIndex = gridIndex;
+        this.trackBuffer = trackBuffer;
+        this.locationBroadcaster = locationBroadcaster;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.acceptedCounter = Counter.builder("routemaster.telemetry.fixes")
+                .tag("result", "accepted")
+                .description("Telemetry fixes put on the ingest queue")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder("routemaster.telemetry.fixes")
+                .tag("result", "rejected")
+                .description("Telemetry fixes rejected as invalid or because the ingest queue was full")
+                .register(meterRegistry);
+        this.unmatchedCounter = Counter.builder("routemaster.telemetry.fixes")
+                .tag("result", "unmatched")
+                .description("Newest fixes per parcel that matched no parcel or were older than its stored position")
+                .register(meterRegistry);
+        Gauge.builder("routemaster.telemetry.queue.depth", queue, BlockingQueue::size)
+                .description("Telemetry fixes waiting to be drained")
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        drainThread = new Thread(this::drainLoop, "telemetry-drain");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        drainThread.interrupt();
+        drainThread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    /**
+     * Queue a batch of fixes without blocking the caller.
+     * Fixes are taken in order until the queue is full; the rest of the batch is rejected.
+     */
+    public TelemetryAck submit(List<TelemetryFix> fixes) {
+        int accepted = 0;
+        int invalid = 0;
+        int rejected = 0;
+        long now = System.currentTimeMillis();
+
+        for (TelemetryFix fix : fixes) {
+            if (!isValid(fix, now)) {
+                invalid++;
+                continue;
+            }
+            TelemetryFix stamped = fix.timestamp() != null ? fix
+                    : new TelemetryFix(fix.parcelId(), fix.longitude(), fix.latitude(), now);
+            if (rejected == 0 && queue.offer(stamped)) {
+                accepted++;
+            } else {
+                // Once full, keep rejecting so a retry of the tail preserves the fix order
+                rejected++;
+            }
+        }
+
+        acceptedCounter.increment(accepted);
+        rejectedCounter.increment(invalid + rejected);
+        return new TelemetryAck(accepted, invalid, rejected, queue.remainingCapacity());
+    }
+
+    /**
+     * A fix stamped further ahead than the allowed clock skew is invalid: stored, it would
+     * make every later fix of the parcel look stale.
+     */
+    private boolean isValid(TelemetryFix fix, long now) {
+        return fix != null
+                && fix.parcelId() != null && ObjectId.isValid(fix.parcelId())
+                && fix.longitude() >= -180 && fix.longitude() <= 180
+                && fix.latitude() >= -90 && fix.latitude() <= 90
+                && (fix.timestamp() == null || fix.timestamp() <= now + maxClockSkew);
+    }
+
+    private void drainLoop() {
+        List<TelemetryFix> batch = new ArrayList<>();
+        while (running || !queue.isEmpty()) {
+            try {
+                TelemetryFix first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, drainBatchSize - 1);
+                apply(batch);
+            } catch (InterruptedException e) {
+                // Shutdown: loop once more to apply what is still queued
+                running = false;
+            } catch (Exception e) {
+                log.error("Failed to apply {} telemetry fixes", batch.size(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void apply(List<TelemetryFix> batch) {
+        Map<String, TelemetryFix> newest = new LinkedHashMap<>();
+        for (TelemetryFix fix : batch) {
+            newest.merge(fix.parcelId(), fix, (queued, next) -> next.timestamp() >= queued.timestamp() ? next : queued);
+        }
+
+        BulkOperations bulkOps = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Parcel.class);
+        for (TelemetryFix fix : newest.values()) {
+            bulkOps.updateOne(LocationWriteBehindBuffer.positionQuery(fix.parcelId(), fix.timestamp()),
+                    LocationWriteBehindBuffer.positionUpdate(fix.longitude(), fix.latitude(), fix.timestamp()));
+        }
+        BulkWriteResult result = bulkOps.execute();
+        if (result.getMatchedCount() == 0) {
+            unmatchedCounter.increment(newest.size());
+            return;
+        }
+
+        // An unordered bulk result does not say which updates matched; a parcel whose stored fix
+        // is now ours did. This also supplies the tracking number and status for the broadcast.
+        Query query = Query.query(Criteria.where("_id").in(newest.keySet()));
+        query.fields().include("trackingNumber", "status", "locationTimestamp");
+        Map<String, Parcel> matched = new HashMap<>();
+        for (Parcel parcel : mongoTemplate.find(query, Parcel.class)) {
+            TelemetryFix fix = newest.get(parcel.getId());
+            if (fix != null && fix.timestamp().equals(parcel.getLocationTimestamp())) {
+                matched.put(parcel.getId(), parcel);
+            }
+        }
+        unmatchedCounter.increment(newest.size() - matched.size());
+
+        for (TelemetryFix fix : batch) {
+            // Every fix of a matched parcel goes into the track; only the newest is indexed and broadcast
+            if (matched.containsKey(fix.parcelId())) {
+                trackBuffer.record(fix.parcelId(), fix.longitude(), fix.latitude(), fix.timestamp());
+            }
+        }
+        List<LocationSimulatorService.LocationUpdate> updates = new ArrayList<>(matched.size());
+        for (Parcel parcel : matched.values()) {
+            TelemetryFix fix = newest.get(parcel.getId());
+            gridIndex.update(fix.parcelId(), fix.longitude(), fix.latitude());
+            parcelCache.updateLocation(fix.parcelId(), fix.longitude(), fix.latitude(), fix.timestamp());
+            updates.add(new LocationSimulatorService.LocationUpdate(
+                    fix.parcelId(), parcel.getTrackingNumber(), fix.longitude(), fix.latitude(),
+                    parcel.getStatus() != null ? parcel.getStatus().name() : null, fix.timestamp()));
+        }
+        locationBroadcaster.publish(updates);
+        log.debug("Applied {} telemetry fixes, {} of {} parcels matched", batch.size(), matched.size(), newest.size());
+    }
+
+    /**
+     * One GPS fix; timestamp is epoch millis and defaults to the time of receipt.
+     */
+    public record TelemetryFix(String parcelId, double longitude, double latitude, Long timestamp) {
+    }
+
+    /**
+     * Sent back per batch. A device that sees rejected > 0 should resend the rejected tail later.
+     */
+    public record TelemetryAck(int accepted, int invalid, int rejected, int remainingCapacity) {
+    }
+}
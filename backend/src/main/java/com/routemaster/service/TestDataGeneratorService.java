@@ -18,6 +18,7 @@ import java.util.Random;
 public class TestDataGeneratorService {
 
     private final RouteLogRepository routeLogRepository;
+    private final RouteReplayService routeReplayService;
     private final Random random = new Random();
 
     // City center coordinates (New Delhi, India)
@@ -60,6 +61,8 @@ public class TestDataGeneratorService {
         if (!routeLogs.isEmpty()) {
             routeLogRepository.saveAll(routeLogs);
         }
+        // Route ids repeat between runs, so cached replays may describe the previous data
+        routeReplayService.invalidateAll();
 
         log.info("Successfully generated {} test route logs", count);
     }
@@ -96,6 +99,7 @@ public class TestDataGeneratorService {
      */
     public void clearRouteLogs() {
         routeLogRepository.deleteAll();
+        routeReplayService.invalidateAll();
         log.info("Cleared all route logs");
     }
 }
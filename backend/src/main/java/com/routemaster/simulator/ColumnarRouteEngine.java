@@ -0,0 +1,174 @@
+package com.routemaster.simulator;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Struct-of-arrays route storage.
+ * Coordinates live in primitive columns indexed by a dense slot id, so a tick is
+ * one pass over double[] arrays with no per-route objects and no allocation.
+ * Slots of removed routes are reused by later additions. Shards are contiguous slot ranges.
+ */
+public class ColumnarRouteEngine implements RouteEngine {
+
+    private String[] parcelIds;
+    private String[] trackingNumbers;
+    private double[] currentLon;
+    private double[] currentLat;
+    private double[] destLon;
+    private double[] destLat;
+    private boolean[] arrived;
+
+    // Slots [0, highWater) have been used at least once; free ones are kept on a stack
+    private int highWater;
+    private int[] freeSlots;
+    private int freeCount;
+
+    private final Map<String, Integer> slotByParcel = new HashMap<>();
+    private final int shardCount;
+
+    public ColumnarRouteEngine(int initialCapacity, int shardCount) {
+        this.shardCount = Math.max(1, shardCount);
+        int capacity = Math.max(16, initialCapacity);
+        parcelIds = new String[capacity];
+        trackingNumbers = new String[capacity];
+        currentLon = new double[capacity];
+        currentLat = new double[capacity];
+        destLon = new double[capacity];
+        destLat = new double[capacity];
+        arrived = new boolean[capacity];
+        freeSlots = new int[capacity];
+    }
+
+    @Override
+    public void add(String parcelId, String trackingNumber,
+                    double startLon, double startLat, double destLon, double destLat) {
+        Integer existing = slotByParcel.get(parcelId);
+        int slot = existing != null ? existing : allocateSlot();
+
+        parcelIds[slot] = parcelId;
+        trackingNumbers[slot] = trackingNumber;
+        currentLon[slot] = startLon;
+        currentLat[slot] = startLat;
+        this.destLon[slot] = destLon;
+        this.destLat[slot] = destLat;
+        arrived[slot] = false;
+        slotByParcel.put(parcelId, slot);
+    }
+
+    @Override
+    public boolean remove(String parcelId) {
+        Integer slot = slotByParcel.remove(parcelId);
+        if (slot == null) {
+            return false;
+        }
+        parcelIds[slot] = null;
+        trackingNumbers[slot] = null;
+        // A free slot has current == destination, so the advance loop leaves it untouched
+        destLon[slot] = currentLon[slot];
+        destLat[slot] = currentLat[slot];
+        freeSlots[freeCount++] = slot;
+        return true;
+    }
+
+    @Override
+    public int size() {
+        return slotByParcel.size();
+    }
+
+    @Override
+    public int shardCount() {
+        return shardCount;
+    }
+
+    @Override
+    public void advance(int shard, double stepSize, double jitter, SplittableRandom random, RouteSink sink) {
+        int chunk = (highWater + shardCount - 1) / shardCount;
+        int from = Math.min(shard * chunk, highWater);
+        int to = Math.min(from + chunk, highWater);
+
+        if (jitter > 0) {
+            advanceRangeJittered(from, to, stepSize, jitter, random);
+        } else {
+            advanceRange(from, to, stepSize);
+        }
+
+        for (int i = from; i < to; i++) {
+            if (parcelIds[i] != null) {
+                sink.accept(parcelIds[i], trackingNumbers[i], currentLon[i], currentLat[i], arrived[i]);
+            }
+        }
+    }
+
+    /**
+     * Branch-light kernel over the coordinate columns.
+     * A route that is further than one step away moves by exactly one step; otherwise it snaps
+     * to its destination. It has arrived once the remaining distance is below one step, which is
+     * the case when it started less than two steps away - so one sqrt per route and no Math.pow.
+     */
+    private void advanceRange(int from, int to, double stepSize) {
+        final double step2 = stepSize * stepSize;
+        final double arrive2 = 4 * step2;
+        final double[] lon = currentLon;
+        final double[] lat = currentLat;
+        final double[] dLon = destLon;
+        final double[] dLat = destLat;
+        final boolean[] done = arrived;
+
+        for (int i = from; i < to; i++) {
+            double dx = dLon[i] - lon[i];
+            double dy = dLat[i] - lat[i];
+            double d2 = dx * dx + dy * dy;
+            double scale = d2 > step2 ? stepSize / Math.sqrt(d2) : 1.0;
+            lon[i] += dx * scale;
+            lat[i] += dy * scale;
+            done[i] = d2 < arrive2;
+        }
+    }
+
+    /**
+     * Same as {@link #advanceRange} with a per-route random step.
+     */
+    private void advanceRangeJittered(int from, int to, double stepSize, double jitter, SplittableRandom random) {
+        final double[] lon = currentLon;
+        final double[] lat = currentLat;
+        final double[] dLon = destLon;
+        final double[] dLat = destLat;
+        final boolean[] done = arrived;
+
+        for (int i = from; i < to; i++) {
+            double step = stepSize * (1 + jitter * (2 * random.nextDouble() - 1));
+            double dx = dLon[i] - lon[i];
+            double dy = dLat[i] - lat[i];
+            double d2 = dx * dx + dy * dy;
+            double scale = d2 > step * step ? step / Math.sqrt(d2) : 1.0;
+            lon[i] += dx * scale;
+            lat[i] += dy * scale;
+            done[i] = d2 < 4 * step * step;
+        }
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (highWater == parcelIds.length) {
+            grow();
+        }
+        return highWater++;
+    }
+
+    private void grow() {
+        int capacity = parcelIds.length * 2;
+        parcelIds = Arrays.copyOf(parcelIds, capacity);
+        trackingNumbers = Arrays.copyOf(trackingNumbers, capacity);
+        currentLon = Arrays.copyOf(currentLon, capacity);
+        currentLat = Arrays.copyOf(currentLat, capacity);
+        destLon = Arrays.copyOf(destLon, capacity);
+        destLat = Arrays.copyOf(destLat, capacity);
+        arrived = Arrays.copyOf(arrived, capacity);
+        freeSlots = Arrays.copyOf(freeSlots, capacity);
+    }
+}
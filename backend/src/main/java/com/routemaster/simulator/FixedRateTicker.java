@@ -0,0 +1,146 @@
+package com.routemaster.simulator;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a tick on a fixed-rate grid of deadlines on its own thread.
+ * Deadlines do not move with the tick's own duration, so the period stays the configured
+ * interval under load. A tick that starts a whole period or more after its deadline has missed
+ * ticks, which the {@link OverrunPolicy} resolves. Each tick is told how many periods of
+ * wall-clock time it stands for.
+ */
+@Slf4j
+public class FixedRateTicker {
+
+    // CATCH_UP runs at most this many missed ticks back to back; older ones are dropped
+    private static final int MAX_CATCH_UP_TICKS = 10;
+
+    private final long periodNanos;
+    private final OverrunPolicy policy;
+    private final Tick tick;
+    private final ScheduledExecutorService executor;
+
+    private final Timer durationTimer;
+    private final Timer lagTimer;
+    private final Counter overrunCounter;
+    private final Counter skippedCounter;
+
+    private long nextDeadline;
+    private long lastTickStart;
+    private volatile boolean running;
+
+    public FixedRateTicker(String name, long periodMillis, OverrunPolicy policy, Tick tick, MeterRegistry meterRegistry) {
+        this.periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+        this.policy = policy;
+        this.tick = tick;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.durationTimer = Timer.builder("routemaster.simulator.tick.duration")
+                .description("Time spent in one simulator tick")
+                .register(meterRegistry);
+        this.lagTimer = Timer.builder("routemaster.simulator.tick.lag")
+                .description("How late a simulator tick started after its deadline")
+                .register(meterRegistry);
+        this.overrunCounter = Counter.builder("routemaster.simulator.tick.overruns")
+                .description("Simulator ticks that took longer than the tick interval")
+                .register(meterRegistry);
+        this.skippedCounter = Counter.builder("routemaster.simulator.tick.skipped")
+                .description("Simulator ticks dropped because they were missed")
+                .register(meterRegistry);
+    }
+
+    public void start() {
+        running = true;
+        lastTickStart = System.nanoTime();
+        nextDeadline = lastTickStart + periodNanos;
+        schedule();
+    }
+
+    public void stop() {
+        running = false;
+        executor.shutdownNow();
+    }
+
+    private void schedule() {
+        if (!running) {
+            return;
+        }
+        try {
+            executor.schedule(this::runTick, Math.max(0, nextDeadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // stop() ran between the check and the schedule and has shut the executor down
+            if (running) {
+                throw e;
+            }
+        }
+    }
+
+    private void runTick() {
+        long start = System.nanoTime();
+        long late = Math.max(0, start - nextDeadline);
+        lagTimer.record(late, TimeUnit.NANOSECONDS);
+
+        long missed = late / periodNanos;
+        double periods = 1.0;
+        switch (policy) {
+            case SKIP -> {
+                // Drop the missed deadlines; their movement is lost
+                nextDeadline += missed * periodNanos;
+                skippedCounter.increment(missed);
+            }
+            case CATCH_UP -> {
+                // Missed deadlines stay on the grid and run back to back, up to a limit
+                long dropped = Math.max(0, missed - MAX_CATCH_UP_TICKS);
+                nextDeadline += dropped * periodNanos;
+                skippedCounter.increment(dropped);
+            }
+            case SCALE -> {
+                // One tick covering all the wall-clock time since the previous one
+                periods = (start - lastTickStart) / (double) periodNanos;
+                nextDeadline += missed * periodNanos;
+            }
+        }
+        lastTickStart = start;
+
+        try {
+            tick.run(System.currentTimeMillis(), periods);
+        } catch (Exception e) {
+            log.error("Simulator tick failed", e);
+        } finally {
+            long duration = System.nanoTime() - start;
+            durationTimer.record(duration, TimeUnit.NANOSECONDS);
+            if (duration > periodNanos) {
+                overrunCounter.increment();
+            }
+            nextDeadline += periodNanos;
+            schedule();
+        }
+    }
+
+    @FunctionalInterface
+    public interface Tick {
+
+        /**
+         * @param timestamp wall-clock time of the tick in epoch millis
+         * @param periods   tick intervals of wall-clock time this tick stands for (1.0 when on time)
+         */
+        void run(long timestamp, double periods);
+    }
+
+    public enum OverrunPolicy {
+        SKIP,
+        CATCH_UP,
+        SCALE
+    }
+}
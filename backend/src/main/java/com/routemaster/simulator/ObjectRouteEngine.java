@@ -0,0 +1,100 @@
+package com.routemaster.simulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * One heap object per route, keyed by parcel id and sharded by the id's hash.
+ */
+public class ObjectRouteEngine implements RouteEngine {
+
+    private final List<Map<String, SimulatedRoute>> shards;
+
+    public ObjectRouteEngine(int shardCount) {
+        shards = new ArrayList<>(Math.max(1, shardCount));
+        for (int i = 0; i < Math.max(1, shardCount); i++) {
+            shards.add(new ConcurrentHashMap<>());
+        }
+    }
+
+    @Override
+    public void add(String parcelId, String trackingNumber,
+                    double startLon, double startLat, double destLon, double destLat) {
+        shardOf(parcelId).put(parcelId, new SimulatedRoute(trackingNumber, startLon, startLat, destLon, destLat));
+    }
+
+    @Override
+    public boolean remove(String parcelId) {
+        return shardOf(parcelId).remove(parcelId) != null;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Map<String, SimulatedRoute> shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    @Override
+    public int shardCount() {
+        return shards.size();
+    }
+
+    @Override
+    public void advance(int shard, double stepSize, double jitter, SplittableRandom random, RouteSink sink) {
+        shards.get(shard).forEach((parcelId, route) -> {
+            double step = jitter > 0 ? stepSize * (1 + jitter * (2 * random.nextDouble() - 1)) : stepSize;
+            route.advance(step);
+            sink.accept(parcelId, route.trackingNumber, route.currentLon, route.currentLat,
+                    route.hasReachedDestination(step));
+        });
+    }
+
+    private Map<String, SimulatedRoute> shardOf(String parcelId) {
+        return shards.get(Math.floorMod(parcelId.hashCode(), shards.size()));
+    }
+
+    /**
+     * Simulated route that moves a parcel from origin to destination
+     */
+    private static class SimulatedRoute {
+        private final String trackingNumber;
+        private double currentLon;
+        private double currentLat;
+        private final double destLon;
+        private final double destLat;
+
+        public SimulatedRoute(String trackingNumber, double startLon, double startLat, double destLon, double destLat) {
+            this.trackingNumber = trackingNumber;
+            this.currentLon = startLon;
+            this.currentLat = startLat;
+            this.destLon = destLon;
+            this.destLat = destLat;
+        }
+
+        public void advance(double stepSize) {
+            double deltaLon = destLon - currentLon;
+            double deltaLat = destLat - currentLat;
+            double distance = Math.sqrt(deltaLon * deltaLon + deltaLat * deltaLat);
+
+            if (distance > stepSize) {
+                currentLon += (deltaLon / distance) * stepSize;
+                currentLat += (deltaLat / distance) * stepSize;
+            } else {
+                currentLon = destLon;
+                currentLat = destLat;
+            }
+        }
+
+        public boolean hasReachedDestination(double stepSize) {
+            double deltaLon = destLon - currentLon;
+            double deltaLat = destLat - currentLat;
+            return deltaLon * deltaLon + deltaLat * deltaLat < stepSize * stepSize;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.routemaster.simulator;
+
+import java.util.SplittableRandom;
+
+/**
+ * Holds the simulated routes and moves them towards their destinations.
+ * Routes are split into a fixed number of shards; different shards may be advanced
+ * concurrently, but routes are only added and removed by the simulator thread between ticks.
+ */
+public interface RouteEngine {
+
+    void add(String parcelId, String trackingNumber,
+             double startLon, double startLat, double destLon, double destLat);
+
+    boolean remove(String parcelId);
+
+    int size();
+
+    int shardCount();
+
+    /**
+     * Move every route of the shard one step towards its destination and report it to the sink.
+     * With a non-zero jitter each route's step is scaled by a random factor in
+     * [1 - jitter, 1 + jitter] drawn from the shard's own generator.
+     * Arrived routes stay in the engine until they are removed.
+     */
+    void advance(int shard, double stepSize, double jitter, SplittableRandom random, RouteSink sink);
+
+    enum Type {
+        OBJECT,
+        COLUMNAR
+    }
+}
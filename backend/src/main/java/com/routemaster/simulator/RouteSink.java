@@ -0,0 +1,11 @@
+package com.routemaster.simulator;
+
+/**
+ * Receives the position of every route after it has been advanced.
+ * Takes primitives so engines can report without allocating per route.
+ */
+@FunctionalInterface
+public interface RouteSink {
+
+    void accept(String parcelId, String trackingNumber, double longitude, double latitude, boolean arrived);
+}
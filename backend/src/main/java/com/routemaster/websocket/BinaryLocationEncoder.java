@@ -0,0 +1,155 @@
+package com.routemaster.websocket;
+
+import com.routemaster.model.Parcel;
+import com.routemaster.service.LocationSimulatorService.LocationUpdate;
+import org.springframework.util.MimeType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Compact binary encoding of location frames for one session.
+ * The encoder remembers which parcels it has already sent and their last coordinates, so
+ * a repeat update is a dictionary reference plus small coordinate deltas (~8 bytes instead of
+ * ~150 bytes of JSON). Decoding depends on every frame being received in order.
+ *
+ * <pre>
+ * frame   := version(1 byte) flags(1 byte) count(varint) baseTimestamp(zigzag varint, epoch ms) record*
+ * flags   := bit 0 set = dictionary reset: clear the dictionary and coordinates before reading
+ * record  := ref(varint) [entry] status(1 byte) dLon(zigzag varint) dLat(zigzag varint) dTime(zigzag varint)
+ * ref     := 0 for a new parcel, followed by entry; otherwise dictionary index + 1
+ * entry   := parcelId(varint length + UTF-8) trackingNumber(varint length + UTF-8, empty if unknown);
+ *            new entries take the next dictionary index, starting at 0
+ * status  := ParcelStatus ordinal + 1, 0 if unknown
+ * dLon/dLat := microdegrees minus the last value sent for the parcel (0 for a new parcel)
+ * dTime   := milliseconds relative to baseTimestamp
+ * </pre>
+ */
+public class BinaryLocationEncoder {
+
+    public static final MimeType CONTENT_TYPE = new MimeType("application", "octet-stream", Map.of("encoding", "location-v1"));
+
+    private static final int VERSION = 1;
+    private static final int FLAG_RESET = 1;
+    private static final Parcel.ParcelStatus[] STATUSES = Parcel.ParcelStatus.values();
+
+    private final int maxDictionarySize;
+    private final Map<String, ParcelState> dictionary = new HashMap<>();
+    private boolean resetPending;
+
+    private byte[] buffer = new byte[256];
+    private int position;
+
+    public BinaryLocationEncoder(int maxDictionarySize) {
+        this.maxDictionarySize = maxDictionarySize;
+    }
+
+    /**
+     * Encode a frame and hand it to the sender while holding the encoder, so frames reach the
+     * outbound channel in the order their deltas were computed.
+     */
+    public synchronized void encodeAndSend(Collection<LocationUpdate> updates, Consumer<byte[]> sender) {
+        if (dictionary.size() + updates.size() > maxDictionarySize) {
+            dictionary.clear();
+            resetPending = true;
+        }
+
+        position = 0;
+        long base = updates.isEmpty() ? 0 : updates.iterator().next().timestamp();
+        writeByte(VERSION);
+        writeByte(resetPending ? FLAG_RESET : 0);
+        writeVarint(updates.size());
+        writeVarint(zigzag(base));
+        resetPending = false;
+
+        for (LocationUpdate update : updates) {
+            ParcelState state = dictionary.get(update.parcelId());
+            if (state == null) {
+                state = new ParcelState(dictionary.size());
+                dictionary.put(update.parcelId(), state);
+                writeVarint(0);
+                writeString(update.parcelId());
+                writeString(update.trackingNumber());
+            } else {
+                writeVarint(state.index + 1L);
+            }
+            writeByte(statusCode(update.status()));
+
+            long lon = Math.round(update.longitude() * 1e6);
+            long lat = Math.round(update.latitude() * 1e6);
+            writeVarint(zigzag(lon - state.lon));
+            writeVarint(zigzag(lat - state.lat));
+            writeVarint(zigzag(update.timestamp() - base));
+            state.lon = lon;
+            state.lat = lat;
+        }
+        sender.accept(Arrays.copyOf(buffer, position));
+    }
+
+    /**
+     * Start over with an empty dictionary; the next frame carries the reset flag.
+     * Used when earlier frames may not have reached the client.
+     */
+    public synchronized void reset() {
+        dictionary.clear();
+        resetPending = true;
+    }
+
+    private static int statusCode(String status) {
+        if (status == null) {
+            return 0;
+        }
+        for (Parcel.ParcelStatus candidate : STATUSES) {
+            if (candidate.name().equals(status)) {
+                return candidate.ordinal() + 1;
+            }
+        }
+        return 0;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private void writeString(String value) {
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        writeVarint(bytes.length);
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if (position + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+
+    private static class ParcelState {
+        private final int index;
+        private long lon;
+        private long lat;
+
+        ParcelState(int index) {
+            this.index = index;
+        }
+    }
+}
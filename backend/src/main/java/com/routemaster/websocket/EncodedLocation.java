@@ -0,0 +1,14 @@
+package com.routemaster.websocket;
+
+import com.routemaster.service.LocationSimulatorService.LocationUpdate;
+
+/**
+ * A location update together with its JSON encoding, produced once per publish
+ * and shared by every frame the update goes into.
+ */
+public record EncodedLocation(LocationUpdate update, byte[] json) {
+
+    public String parcelId() {
+        return update.parcelId();
+    }
+}
@@ -0,0 +1,104 @@
+package com.routemaster.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Sends payloads that are encoded to JSON once.
+ * convertAndSend runs Jackson for every call, so publishing the same object to several
+ * destinations (or the same update inside several per-session arrays) encoded it again each time.
+ * Here the bytes are produced once and the same array is handed to the broker for every
+ * destination; the broker shares it across subscriber sessions. Payload arrays must not be
+ * modified after they have been sent.
+ */
+@Component
+@RequiredArgsConstructor
+public class JsonBroadcaster {
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final ObjectMapper objectMapper;
+
+    public byte[] encode(Object payload) {
+        try {
+            return objectMapper.writeValueAsBytes(payload);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Encode the payload once and send it to every destination.
+     */
+    public void publish(Object payload, String... destinations) {
+        byte[] json = encode(payload);
+        for (String destination : destinations) {
+            send(destination, json);
+        }
+    }
+
+    public void send(String destination, byte[] json) {
+        messagingTemplate.send(destination, MessageBuilder.createMessage(json, headers(null, MimeTypeUtils.APPLICATION_JSON)));
+    }
+
+    /**
+     * Send to one session's user destination, e.g. /queue/locations for /user/queue/locations.
+     */
+    public void sendToSession(String sessionId, String destination, byte[] json) {
+        sendToSession(sessionId, destination, json, MimeTypeUtils.APPLICATION_JSON);
+    }
+
+    /**
+     * Same as {@link #sendToSession(String, String, byte[])} for an already encoded payload of another type.
+     */
+    public void sendToSession(String sessionId, String destination, byte[] payload, MimeType contentType) {
+        messagingTemplate.send(messagingTemplate.getUserDestinationPrefix() + sessionId + destination,
+                MessageBuilder.createMessage(payload, headers(sessionId, contentType)));
+    }
+
+    /**
+     * JSON array of already encoded elements, built by copying bytes instead of re-encoding.
+     */
+    public static byte[] array(List<byte[]> elements) {
+        int size = 2 + Math.max(0, elements.size() - 1);
+        for (byte[] element : elements) {
+            size += element.length;
+        }
+        byte[] json = new byte[size];
+        int position = 0;
+        json[position++] = '[';
+        for (int i = 0; i < elements.size(); i++) {
+            if (i > 0) {
+                json[position++] = ',';
+            }
+            byte[] element = elements.get(i);
+            System.arraycopy(element, 0, json, position, element.length);
+            position += element.length;
+        }
+        json[position] = ']';
+        return json;
+    }
+
+    private static MessageHeaders headers(String sessionId, MimeType contentType) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setContentType(contentType);
+        if (sessionId != null) {
+            // User destinations addressed by session id are resolved through this header
+            headers.setSessionId(sessionId);
+        }
+        // Lets the template set the destination without copying the headers
+        headers.setLeaveMutable(true);
+        return headers.getMessageHeaders();
+    }
+}
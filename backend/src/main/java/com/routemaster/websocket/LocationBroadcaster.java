@@ -0,0 +1,191 @@
+package com.routemaster.websocket;
+
+import com.routemaster.service.LocationSimulatorService.LocationUpdate;
+import com.routemaster.service.ParcelGridIndex;
+import com.routemaster.websocket.LocationSessionRegistry.LocationSession;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Publishes the location updates of one simulator tick.
+ * In PER_PARCEL mode every update is its own frame on /topic/locations; in BATCH mode
+ * the whole tick goes out as a single array frame. Per-parcel topics are only
+ * published when somebody is subscribed to them.
+ * Sessions subscribed to /user/queue/locations get one array frame per tick holding
+ * only the parcels inside their viewport.
+ * In CONFLATE delivery all of this goes through {@link LocationConflator} instead of the broker.
+ * Every update is encoded to JSON once per publish; topic frames and per-session arrays are
+ * built from those bytes. Sessions that negotiated binary frames get them from their own
+ * {@link BinaryLocationEncoder}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LocationBroadcaster {
+
+    public static final String LOCATIONS_TOPIC = "/topic/locations";
+    public static final String SESSION_QUEUE = "/queue/locations";
+
+    // Below this many updates, checking each one against the viewport beats a grid lookup
+    private static final int GRID_LOOKUP_THRESHOLD = 256;
+
+    private final JsonBroadcaster jsonBroadcaster;
+    private final LocationSubscriptionRegistry subscriptionRegistry;
+    private final LocationSessionRegistry sessionRegistry;
+    private final ParcelGridIndex gridIndex;
+    private final LocationConflator conflator;
+
+    @Value("${app.websocket.locations.frame-mode:PER_PARCEL}")
+    private FrameMode frameMode;
+
+    @Value("${app.websocket.locations.delivery:BROKER}")
+    private Delivery delivery;
+
+    /**
+     * Whether any STOMP client is subscribed to anything, i.e. whether publishing could reach anyone.
+     * Lets the simulator skip building update objects for a tick nobody watches.
+     */
+    public boolean hasListeners() {
+        return !subscriptionRegistry.subscriptionsBySession().isEmpty();
+    }
+
+    public void publish(List<LocationUpdate> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        // Each update is encoded once and reused by every frame it goes into
+        List<EncodedLocation> encoded = encode(updates);
+
+        if (delivery == Delivery.CONFLATE) {
+            conflator.offerToTopicSubscribers(encoded);
+            deliverToSessions(encoded);
+            return;
+        }
+
+        if (frameMode == FrameMode.BATCH) {
+            jsonBroadcaster.send(LOCATIONS_TOPIC, JsonBroadcaster.array(jsonOf(encoded)));
+        }
+
+        for (EncodedLocation location : encoded) {
+            if (frameMode == FrameMode.PER_PARCEL) {
+                jsonBroadcaster.send(LOCATIONS_TOPIC, location.json());
+            }
+            String parcelTopic = LOCATIONS_TOPIC + "/" + location.parcelId();
+            // True for exact and pattern subscriptions alike, matched the way the broker matches them
+            if (subscriptionRegistry.hasSubscribers(parcelTopic)) {
+                jsonBroadcaster.send(parcelTopic, location.json());
+            }
+        }
+
+        deliverToSessions(encoded);
+    }
+
+    /**
+     * Deliver updates to the per-session location queues, filtered by each session's viewport.
+     * The grid index must already hold the new positions.
+     */
+    public void publishToSessions(List<LocationUpdate> updates) {
+        deliverToSessions(encode(updates));
+    }
+
+    private void deliverToSessions(List<EncodedLocation> updates) {
+        Map<String, EncodedLocation> byParcel = null;
+
+        for (LocationSession session : sessionRegistry.sessions()) {
+            if (!session.isSubscribed()) {
+                continue;
+            }
+            Viewport viewport = session.viewport();
+            List<EncodedLocation> visible;
+            if (viewport == null) {
+                visible = updates;
+            } else if (updates.size() < GRID_LOOKUP_THRESHOLD) {
+                visible = new ArrayList<>();
+                for (EncodedLocation location : updates) {
+                    if (viewport.contains(location.update().longitude(), location.update().latitude())) {
+                        visible.add(location);
+                    }
+                }
+            } else {
+                if (byParcel == null) {
+                    byParcel = new HashMap<>(updates.size() * 2);
+                    for (EncodedLocation location : updates) {
+                        byParcel.put(location.parcelId(), location);
+                    }
+                }
+                visible = collectVisible(viewport, byParcel);
+            }
+
+            if (!visible.isEmpty()) {
+                sendToSession(session, visible);
+            }
+        }
+    }
+
+    private List<EncodedLocation> collectVisible(Viewport viewport, Map<String, EncodedLocation> byParcel) {
+        List<EncodedLocation> visible = new ArrayList<>();
+        gridIndex.forEachInBox(viewport.minLon(), viewport.minLat(), viewport.maxLon(), viewport.maxLat(), parcelId -> {
+            EncodedLocation location = byParcel.get(parcelId);
+            if (location != null) {
+                visible.add(location);
+            }
+        });
+        return visible;
+    }
+
+    private void sendToSession(LocationSession session, List<EncodedLocation> visible) {
+        if (delivery == Delivery.CONFLATE) {
+            conflator.offerToSession(session.sessionId(), visible);
+            return;
+        }
+        BinaryLocationEncoder binaryEncoder = session.binaryEncoder();
+        if (binaryEncoder != null) {
+            binaryEncoder.encodeAndSend(updatesOf(visible), frame -> jsonBroadcaster.sendToSession(
+                    session.sessionId(), SESSION_QUEUE, frame, BinaryLocationEncoder.CONTENT_TYPE));
+            return;
+        }
+        // The array is assembled from the shared element bytes, not re-encoded per session
+        jsonBroadcaster.sendToSession(session.sessionId(), SESSION_QUEUE, JsonBroadcaster.array(jsonOf(visible)));
+    }
+
+    private List<EncodedLocation> encode(List<LocationUpdate> updates) {
+        List<EncodedLocation> encoded = new ArrayList<>(updates.size());
+        for (LocationUpdate update : updates) {
+            encoded.add(new EncodedLocation(update, jsonBroadcaster.encode(update)));
+        }
+        return encoded;
+    }
+
+    static List<LocationUpdate> updatesOf(List<EncodedLocation> locations) {
+        List<LocationUpdate> updates = new ArrayList<>(locations.size());
+        for (EncodedLocation location : locations) {
+            updates.add(location.update());
+        }
+        return updates;
+    }
+
+    private static List<byte[]> jsonOf(List<EncodedLocation> locations) {
+        List<byte[]> json = new ArrayList<>(locations.size());
+        for (EncodedLocation location : locations) {
+            json.add(location.json());
+        }
+        return json;
+    }
+
+    public enum FrameMode {
+        PER_PARCEL,
+        BATCH
+    }
+
+    public enum Delivery {
+        BROKER,
+        CONFLATE
+    }
+}
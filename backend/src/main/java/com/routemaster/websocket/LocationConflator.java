@@ -0,0 +1,372 @@
+package com.routemaster.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.OrderedMessageChannelDecorator;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latest-value delivery of location updates, used when app.websocket.locations.delivery is CONFLATE.
+ * Instead of fanning out through the simple broker, every session gets its own outbox holding at
+ * most one update per (subscription, parcel); a newer position replaces an undelivered older one.
+ * The outbox is released as one frame per subscription, and the next release waits until those
+ * frames have actually been written to the socket, so a slow client receives fewer, fresher
+ * frames instead of an ever-growing backlog.
+ * Topic subscriptions receive array frames; per-parcel topics still receive single updates.
+ * Only exact destinations are served here; pattern subscriptions need BROKER delivery.
+ * Frames go through the same per-session ordering as the broker's messages, so a session
+ * receives them in release order.
+ */
+@Component
+public class LocationConflator {
+
+    // Marks frames sent by this class so their completed writes can be recognised
+    static final String FRAME_HEADER = "location-frame";
+    private static final String FRAME_MARKER = "\n" + FRAME_HEADER + ":";
+    // Only the ordering decorator logs, and it takes a commons-logging Log
+    private static final Log LOGGER = LogFactory.getLog(LocationConflator.class);
+
+    private final MessageChannel orderedOutboundChannel;
+    private final LocationSubscriptionRegistry subscriptionRegistry;
+    private final LocationSessionRegistry sessionRegistry;
+    private final Counter conflatedCounter;
+
+    // A release whose frames were never reported written (e.g. dropped on close) is retried after this
+    @Value("${app.websocket.locations.conflation-timeout:10000}")
+    private long releaseTimeoutMillis;
+
+    private final Map<String, Outbox> outboxes = new ConcurrentHashMap<>();
+
+    public LocationConflator(@Lazy @Qualifier("clientOutboundChannel") MessageChannel clientOutboundChannel,
+                             LocationSubscriptionRegistry subscriptionRegistry,
+                             LocationSessionRegistry sessionRegistry,
+                             MeterRegistry meterRegistry) {
+        // Relies on the channel interceptor installed by the broker's setPreservePublishOrder(true)
+        this.orderedOutboundChannel = new OrderedMessageChannelDecorator(clientOutboundChannel, LOGGER);
+        this.subscriptionRegistry = subscriptionRegistry;
+        this.sessionRegistry = sessionRegistry;
+        this.conflatedCounter = Counter.builder("routemaster.websocket.location.conflated")
+                .description("Undelivered location updates replaced by a newer position of the same parcel")
+                .register(meterRegistry);
+        // Aggregated over sessions; a per-session tag would add a time series for every connection
+        Gauge.builder("routemaster.websocket.location.pending", this, LocationConflator::pendingTotal)
+                .description("Location updates waiting for slow sessions, all sessions together")
+                .register(meterRegistry);
+        Gauge.builder("routemaster.websocket.location.pending.max", this, LocationConflator::pendingMax)
+                .description("Location updates waiting for the slowest session")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Queue updates for every session subscribed to /topic/locations or a per-parcel location topic.
+     */
+    public void offerToTopicSubscribers(List<EncodedLocation> updates) {
+        Map<String, EncodedLocation> byParcel = null;
+        String parcelTopicPrefix = LocationBroadcaster.LOCATIONS_TOPIC + "/";
+
+        for (Map.Entry<String, Map<String, String>> session : subscriptionRegistry.subscriptionsBySession().entrySet()) {
+            Outbox outbox = null;
+            for (Map.Entry<String, String> subscription : session.getValue().entrySet()) {
+                String destination = subscription.getValue();
+                if (destination.equals(LocationBroadcaster.LOCATIONS_TOPIC)) {
+                    outbox = outbox != null ? outbox : outbox(session.getKey());
+                    outbox.add(subscription.getKey(), destination, updates);
+                } else if (destination.startsWith(parcelTopicPrefix)) {
+                    if (byParcel == null) {
+                        byParcel = new LinkedHashMap<>(updates.size() * 2);
+                        for (EncodedLocation update : updates) {
+                            byParcel.put(update.parcelId(), update);
+                        }
+                    }
+                    EncodedLocation update = byParcel.get(destination.substring(parcelTopicPrefix.length()));
+                    if (update != null) {
+                        outbox = outbox != null ? outbox : outbox(session.getKey());
+                        outbox.add(subscription.getKey(), destination, List.of(update));
+                    }
+                }
+            }
+            if (outbox != null) {
+                release(outbox);
+            }
+        }
+    }
+
+    /**
+     * Queue updates for the session's /user/queue/locations subscriptions.
+     */
+    public void offerToSession(String sessionId, Collection<EncodedLocation> updates) {
+        Map<String, String> subscriptions = subscriptionRegistry.subscriptionsBySession().get(sessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        Outbox outbox = null;
+        for (Map.Entry<String, String> subscription : subscriptions.entrySet()) {
+            if (LocationSessionRegistry.SESSION_DESTINATION.equals(subscription.getValue())) {
+                outbox = outbox != null ? outbox : outbox(sessionId);
+                outbox.add(subscription.getKey(), subscription.getValue(), updates);
+            }
+        }
+        if (outbox != null) {
+            release(outbox);
+        }
+    }
+
+    /**
+     * Wraps each WebSocket session so completed writes of our frames are reported back.
+     */
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                super.afterConnectionEstablished(new WriteTrackingSession(session));
+            }
+        };
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        Outbox outbox = accessor.getSessionId() != null ? outboxes.get(accessor.getSessionId()) : null;
+        if (outbox != null && accessor.getSubscriptionId() != null) {
+            outbox.dropSubscription(accessor.getSubscriptionId());
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        outboxes.remove(event.getSessionId());
+    }
+
+    private double pendingTotal() {
+        long total = 0;
+        for (Outbox outbox : outboxes.values()) {
+            total += outbox.depth();
+        }
+        return total;
+    }
+
+    private double pendingMax() {
+        int max = 0;
+        for (Outbox outbox : outboxes.values()) {
+            max = Math.max(max, outbox.depth());
+        }
+        return max;
+    }
+
+    private Outbox outbox(String sessionId) {
+        return outboxes.computeIfAbsent(sessionId, Outbox::new);
+    }
+
+    private void release(Outbox outbox) {
+        Release release = outbox.take(System.currentTimeMillis(), releaseTimeoutMillis);
+        if (release.afterTimeout()) {
+            // Frames of the timed-out release may never have arrived, so binary deltas start over
+            LocationSessionRegistry.LocationSession session = sessionRegistry.session(outbox.sessionId);
+            if (session != null && session.binaryEncoder() != null) {
+                session.binaryEncoder().reset();
+            }
+        }
+        for (Frame frame : release.frames()) {
+            BinaryLocationEncoder binaryEncoder = binaryEncoder(outbox.sessionId, frame.destination());
+            if (binaryEncoder != null) {
+                binaryEncoder.encodeAndSend(LocationBroadcaster.updatesOf(frame.updates()), payload ->
+                        send(outbox.sessionId, frame.subscriptionId(), frame.destination(), payload,
+                                BinaryLocationEncoder.CONTENT_TYPE));
+                continue;
+            }
+            // Frames are assembled from the element bytes encoded once by the broadcaster
+            List<byte[]> json = new ArrayList<>(frame.updates().size());
+            for (EncodedLocation update : frame.updates()) {
+                json.add(update.json());
+            }
+            byte[] payload = frame.single() ? json.get(0) : JsonBroadcaster.array(json);
+            send(outbox.sessionId, frame.subscriptionId(), frame.destination(), payload, MimeTypeUtils.APPLICATION_JSON);
+        }
+    }
+
+    private BinaryLocationEncoder binaryEncoder(String sessionId, String destination) {
+        if (!LocationSessionRegistry.SESSION_DESTINATION.equals(destination)) {
+            return null;
+        }
+        LocationSessionRegistry.LocationSession session = sessionRegistry.session(sessionId);
+        return session != null ? session.binaryEncoder() : null;
+    }
+
+    private void send(String sessionId, String subscriptionId, String destination, byte[] payload, MimeType contentType) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setSessionId(sessionId);
+        headers.setSubscriptionId(subscriptionId);
+        headers.setDestination(destination);
+        headers.setContentType(contentType);
+        headers.setNativeHeader(FRAME_HEADER, "1");
+        orderedOutboundChannel.send(MessageBuilder.createMessage(payload, headers.getMessageHeaders()));
+    }
+
+    private void onWritten(String sessionId) {
+        Outbox outbox = outboxes.get(sessionId);
+        if (outbox != null && outbox.written()) {
+            release(outbox);
+        }
+    }
+
+    private static boolean isLocationFrame(WebSocketMessage<?> message) {
+        // Only the header block, which ends at the first blank line, is searched
+        if (message instanceof TextMessage text) {
+            String payload = text.getPayload();
+            int headerEnd = payload.indexOf("\n\n");
+            return payload.lastIndexOf(FRAME_MARKER, headerEnd < 0 ? payload.length() : headerEnd) >= 0;
+        }
+        if (message instanceof BinaryMessage binary) {
+            ByteBuffer payload = binary.getPayload();
+            byte[] marker = FRAME_MARKER.getBytes(StandardCharsets.UTF_8);
+            outer:
+            for (int i = payload.position(); i + marker.length <= payload.limit(); i++) {
+                if (i > payload.position() && payload.get(i) == '\n' && payload.get(i - 1) == '\n') {
+                    return false;
+                }
+                for (int j = 0; j < marker.length; j++) {
+                    if (payload.get(i + j) != marker[j]) {
+                        continue outer;
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Pending updates of one session, keyed by (subscription, parcel).
+     */
+    private class Outbox {
+        private final String sessionId;
+        private final Map<PendingKey, EncodedLocation> pending = new LinkedHashMap<>();
+        private int inFlight;
+        private long releasedAt;
+
+        Outbox(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        synchronized void add(String subscriptionId, String destination, Collection<EncodedLocation> updates) {
+            int replaced = 0;
+            for (EncodedLocation update : updates) {
+                if (pending.put(new PendingKey(subscriptionId, destination, update.parcelId()), update) != null) {
+                    replaced++;
+                }
+            }
+            if (replaced > 0) {
+                conflatedCounter.increment(replaced);
+            }
+        }
+
+        /**
+         * Remove everything pending as frames, unless earlier frames are still being written.
+         */
+        synchronized Release take(long now, long timeoutMillis) {
+            if (pending.isEmpty() || (inFlight > 0 && now - releasedAt < timeoutMillis)) {
+                return Release.NONE;
+            }
+            boolean afterTimeout = inFlight > 0;
+            Map<String, Frame> frames = new LinkedHashMap<>();
+            for (Map.Entry<PendingKey, EncodedLocation> entry : pending.entrySet()) {
+                PendingKey key = entry.getKey();
+                // Per-parcel topics keep their single-update frames
+                frames.computeIfAbsent(key.subscriptionId(), id -> new Frame(id, key.destination(),
+                                key.destination().startsWith(LocationBroadcaster.LOCATIONS_TOPIC + "/"),
+                                new ArrayList<>()))
+                        .updates().add(entry.getValue());
+            }
+            pending.clear();
+            inFlight = frames.size();
+            releasedAt = now;
+            return new Release(new ArrayList<>(frames.values()), afterTimeout);
+        }
+
+        /**
+         * @return true once every frame of the last release has been written
+         */
+        synchronized boolean written() {
+            if (inFlight > 0) {
+                inFlight--;
+            }
+            return inFlight == 0;
+        }
+
+        synchronized void dropSubscription(String subscriptionId) {
+            pending.keySet().removeIf(key -> key.subscriptionId().equals(subscriptionId));
+        }
+
+        synchronized int depth() {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Reports completed writes of location frames; sits below Spring's send-buffering decorator,
+     * so a return from sendMessage means the frame has left the server.
+     */
+    private class WriteTrackingSession extends WebSocketSessionDecorator {
+
+        WriteTrackingSession(WebSocketSession session) {
+            super(session);
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            try {
+                super.sendMessage(message);
+            } finally {
+                if (isLocationFrame(message)) {
+                    onWritten(getId());
+                }
+            }
+        }
+    }
+
+    private record PendingKey(String subscriptionId, String destination, String parcelId) {
+    }
+
+    private record Frame(String subscriptionId, String destination, boolean single, List<EncodedLocation> updates) {
+    }
+
+    /**
+     * @param afterTimeout the previous release was not reported written before the timeout
+     */
+    private record Release(List<Frame> frames, boolean afterTimeout) {
+        static final Release NONE = new Release(List.of(), false);
+    }
+}
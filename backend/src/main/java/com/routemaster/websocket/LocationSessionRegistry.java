@@ -0,0 +1,142 @@
+package com.routemaster.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sessions that receive location updates on their own queue (/user/queue/locations)
+ * rather than the shared topic, together with the viewport each of them has registered.
+ * A subscription with the header location-encoding:binary switches the session to
+ * {@link BinaryLocationEncoder} frames; SockJS sessions cannot carry binary frames and stay on JSON.
+ */
+@Component
+@Slf4j
+public class LocationSessionRegistry {
+
+    public static final String SESSION_DESTINATION = "/user/queue/locations";
+    public static final String VIEWPORT_HEADER = "viewport";
+    public static final String ENCODING_HEADER = "location-encoding";
+
+    private static final String SOCKJS_ATTRIBUTE = "routemaster.sockjs";
+
+    private final Map<String, LocationSession> sessions = new ConcurrentHashMap<>();
+
+    @Value("${app.websocket.locations.binary.max-dictionary-size:65536}")
+    private int maxDictionarySize;
+
+    public Collection<LocationSession> sessions() {
+        return sessions.values();
+    }
+
+    // null when the session has no location queue state
+    public LocationSession session(String sessionId) {
+        return sessions.get(sessionId);
+    }
+
+    /**
+     * Marks SockJS sessions in their attributes, which STOMP events expose as session attributes.
+     */
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                session.getAttributes().put(SOCKJS_ATTRIBUTE, session instanceof SockJsSession);
+                super.afterConnectionEstablished(session);
+            }
+        };
+    }
+
+    public void setViewport(String sessionId, Viewport viewport) {
+        sessions.computeIfAbsent(sessionId, LocationSession::new).viewport = viewport;
+        log.debug("Session {} viewport set to {}", sessionId, viewport);
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        if (accessor.getSessionId() == null || !SESSION_DESTINATION.equals(accessor.getDestination())) {
+            return;
+        }
+        LocationSession session = sessions.computeIfAbsent(accessor.getSessionId(), LocationSession::new);
+        session.subscriptionIds.add(accessor.getSubscriptionId());
+
+        String viewport = accessor.getFirstNativeHeader(VIEWPORT_HEADER);
+        if (viewport != null) {
+            try {
+                session.viewport = Viewport.parse(viewport);
+            } catch (IllegalArgumentException e) {
+                log.warn("Ignoring invalid viewport header from session {}: {}", accessor.getSessionId(), viewport);
+            }
+        }
+
+        if ("binary".equalsIgnoreCase(accessor.getFirstNativeHeader(ENCODING_HEADER))) {
+            Map<String, Object> attributes = accessor.getSessionAttributes();
+            if (attributes != null && Boolean.TRUE.equals(attributes.get(SOCKJS_ATTRIBUTE))) {
+                log.debug("Session {} asked for binary location frames over SockJS, keeping JSON", accessor.getSessionId());
+            } else {
+                // A new subscription starts with an empty dictionary on the client
+                session.binaryEncoder = new BinaryLocationEncoder(maxDictionarySize);
+            }
+        } else {
+            session.binaryEncoder = null;
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        LocationSession session = accessor.getSessionId() != null ? sessions.get(accessor.getSessionId()) : null;
+        if (session != null && accessor.getSubscriptionId() != null) {
+            session.subscriptionIds.remove(accessor.getSubscriptionId());
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        sessions.remove(event.getSessionId());
+    }
+
+    public static class LocationSession {
+        private final String sessionId;
+        private final Set<String> subscriptionIds = ConcurrentHashMap.newKeySet();
+        private volatile Viewport viewport;
+        private volatile BinaryLocationEncoder binaryEncoder;
+
+        LocationSession(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        public String sessionId() {
+            return sessionId;
+        }
+
+        public boolean isSubscribed() {
+            return !subscriptionIds.isEmpty();
+        }
+
+        // null when the session has not registered a viewport and sees every parcel
+        public Viewport viewport() {
+            return viewport;
+        }
+
+        // null when the session receives JSON frames
+        public BinaryLocationEncoder binaryEncoder() {
+            return binaryEncoder;
+        }
+    }
+}
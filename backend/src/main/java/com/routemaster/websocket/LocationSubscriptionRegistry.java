@@ -0,0 +1,102 @@
+package com.routemaster.websocket;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks which STOMP destinations currently have subscribers.
+ * The simple broker keeps this to itself, and the user registry only covers authenticated
+ * sessions, so we follow the subscribe/unsubscribe/disconnect events ourselves.
+ * Pattern subscriptions such as /topic/locations/* are matched the way the simple broker
+ * matches them, with an AntPathMatcher.
+ */
+@Component
+@Slf4j
+public class LocationSubscriptionRegistry {
+
+    // sessionId -> (subscriptionId -> destination)
+    private final Map<String, Map<String, String>> sessions = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> subscriberCounts = new ConcurrentHashMap<>();
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+    // Subscriptions to patterns; while there are none, a lookup is a single map get
+    private final AtomicInteger patternSubscriptions = new AtomicInteger();
+
+    public boolean hasSubscribers(String destination) {
+        AtomicInteger count = subscriberCounts.get(destination);
+        if (count != null && count.get() > 0) {
+            return true;
+        }
+        if (patternSubscriptions.get() == 0) {
+            return false;
+        }
+        for (String subscribed : subscriberCounts.keySet()) {
+            if (pathMatcher.isPattern(subscribed) && pathMatcher.match(subscribed, destination)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Live read-only view of sessionId -> (subscriptionId -> destination).
+     */
+    public Map<String, Map<String, String>> subscriptionsBySession() {
+        return Collections.unmodifiableMap(sessions);
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String sessionId = accessor.getSessionId();
+        String destination = accessor.getDestination();
+        if (sessionId == null || destination == null) {
+            return;
+        }
+        sessions.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>())
+                .put(accessor.getSubscriptionId(), destination);
+        subscriberCounts.computeIfAbsent(destination, d -> new AtomicInteger()).incrementAndGet();
+        if (pathMatcher.isPattern(destination)) {
+            patternSubscriptions.incrementAndGet();
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        Map<String, String> subscriptions = sessions.get(accessor.getSessionId());
+        if (subscriptions != null && accessor.getSubscriptionId() != null) {
+            release(subscriptions.remove(accessor.getSubscriptionId()));
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, String> subscriptions = sessions.remove(event.getSessionId());
+        if (subscriptions != null) {
+            subscriptions.values().forEach(this::release);
+        }
+    }
+
+    private void release(String destination) {
+        if (destination == null) {
+            return;
+        }
+        if (pathMatcher.isPattern(destination)) {
+            patternSubscriptions.decrementAndGet();
+        }
+        subscriberCounts.computeIfPresent(destination,
+                (d, count) -> count.decrementAndGet() <= 0 ? null : count);
+    }
+}
@@ -0,0 +1,38 @@
+package com.routemaster.websocket;
+
+/**
+ * Bounding box a client is currently looking at, in degrees.
+ * Sent to /app/locations/viewport or as the "viewport" header ("minLon,minLat,maxLon,maxLat")
+ * when subscribing to /user/queue/locations.
+ */
+public record Viewport(double minLon, double minLat, double maxLon, double maxLat) {
+
+    public Viewport {
+        if (minLon > maxLon) {
+            double swap = minLon;
+            minLon = maxLon;
+            maxLon = swap;
+        }
+        if (minLat > maxLat) {
+            double swap = minLat;
+            minLat = maxLat;
+            maxLat = swap;
+        }
+    }
+
+    public boolean contains(double longitude, double latitude) {
+        return longitude >= minLon && longitude <= maxLon && latitude >= minLat && latitude <= maxLat;
+    }
+
+    public static Viewport parse(String header) {
+        String[] parts = header.split(",");
+        if (parts.length != 4) {
+            throw new IllegalArgumentException("Viewport must be minLon,minLat,maxLon,maxLat: " + header);
+        }
+        return new Viewport(
+                Double.parseDouble(parts[0].trim()),
+                Double.parseDouble(parts[1].trim()),
+                Double.parseDouble(parts[2].trim()),
+                Double.parseDouble(parts[3].trim()));
+    }
+}
@@ -0,0 +1,69 @@
+package com.routemaster.batch;
+
+import com.routemaster.model.RouteLog;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * The per-route calculations of the analytics processor before {@link RouteAnalyticsKernel},
+ * kept verbatim as the reference for the kernel's test and benchmark.
+ */
+public final class LegacyRouteAnalytics {
+
+    private LegacyRouteAnalytics() {
+    }
+
+    public static double totalDistance(List<RouteLog.LocationPoint> locations) {
+        double totalDistance = 0.0;
+        for (int i = 1; i < locations.size(); i++) {
+            RouteLog.LocationPoint prev = locations.get(i - 1);
+            RouteLog.LocationPoint curr = locations.get(i);
+            totalDistance += haversineDistance(
+                    prev.getLatitude(), prev.getLongitude(),
+                    curr.getLatitude(), curr.getLongitude());
+        }
+        return totalDistance;
+    }
+
+    public static double averageSpeed(List<RouteLog.LocationPoint> locations) {
+        return locations.stream()
+                .filter(loc -> loc.getSpeed() != null)
+                .mapToDouble(RouteLog.LocationPoint::getSpeed)
+                .average()
+                .orElse(0.0);
+    }
+
+    public static double maxSpeed(List<RouteLog.LocationPoint> locations) {
+        return locations.stream()
+                .filter(loc -> loc.getSpeed() != null)
+                .mapToDouble(RouteLog.LocationPoint::getSpeed)
+                .max()
+                .orElse(0.0);
+    }
+
+    public static Long totalDurationMinutes(List<RouteLog.LocationPoint> locations) {
+        if (locations.size() > 1) {
+            LocalDateTime start = locations.get(0).getTimestamp();
+            LocalDateTime end = locations.get(locations.size() - 1).getTimestamp();
+            return Duration.between(start, end).toMinutes();
+        }
+        return null;
+    }
+
+    private static double haversineDistance(double lat1, double lon1, double lat2, double lon2) {
+        final int R = 6371; // Earth's radius in km
+
+        double latDistance = Math.toRadians(lat2 - lat1);
+        double lonDistance = Math.toRadians(lon2 - lon1);
+
+        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                        * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
+
+        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+
+        return R * c;
+    }
+}
@@ -0,0 +1,87 @@
+package com.routemaster.batch;
+
+import com.routemaster.model.RouteLog;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class RouteAnalyticsKernelTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2026, 3, 14, 8, 0);
+
+    @Test
+    void matchesTheLegacyCalculationsOnRandomRoutes() {
+        SplittableRandom random = new SplittableRandom(7);
+        for (int route = 0; route < 200; route++) {
+            List<RouteLog.LocationPoint> locations = randomRoute(random, 1 + random.nextInt(500));
+
+            RouteAnalyticsKernel.Result result = RouteAnalyticsKernel.compute(locations);
+
+            double legacyDistance = LegacyRouteAnalytics.totalDistance(locations);
+            assertThat(result.totalDistance()).isCloseTo(legacyDistance, within(1e-9 * Math.max(1, legacyDistance)));
+            assertThat(result.averageSpeed()).isCloseTo(LegacyRouteAnalytics.averageSpeed(locations), within(1e-9));
+            assertThat(result.maxSpeed()).isEqualTo(LegacyRouteAnalytics.maxSpeed(locations));
+            assertThat(result.totalDurationMinutes()).isEqualTo(LegacyRouteAnalytics.totalDurationMinutes(locations));
+        }
+    }
+
+    @Test
+    void speedsDefaultToZeroWithoutRecordedSpeeds() {
+        List<RouteLog.LocationPoint> locations = List.of(
+                point(0, 77.59, 12.97, null),
+                point(60, 77.60, 12.97, null));
+
+        RouteAnalyticsKernel.Result result = RouteAnalyticsKernel.compute(locations);
+
+        assertThat(result.averageSpeed()).isZero();
+        assertThat(result.maxSpeed()).isZero();
+    }
+
+    @Test
+    void singlePointHasNoDuration() {
+        RouteAnalyticsKernel.Result result = RouteAnalyticsKernel.compute(List.of(point(0, 77.59, 12.97, 10.0)));
+
+        assertThat(result.totalDistance()).isZero();
+        assertThat(result.totalDurationMinutes()).isNull();
+        assertThat(result.movingDurationMinutes()).isZero();
+    }
+
+    @Test
+    void movingTimeCountsOnlySegmentsAtWalkingPaceOrFaster() {
+        // 0.01 degrees of latitude is about 1.1 km: 10 minutes driving, then 20 minutes parked
+        List<RouteLog.LocationPoint> locations = List.of(
+                point(0, 77.59, 12.97, 6.6),
+                point(600, 77.59, 12.98, 6.6),
+                point(1800, 77.59, 12.98, 0.0));
+
+        RouteAnalyticsKernel.Result result = RouteAnalyticsKernel.compute(locations);
+
+        assertThat(result.totalDurationMinutes()).isEqualTo(30);
+        assertThat(result.movingDurationMinutes()).isEqualTo(10);
+    }
+
+    private static List<RouteLog.LocationPoint> randomRoute(SplittableRandom random, int points) {
+        List<RouteLog.LocationPoint> locations = new ArrayList<>(points);
+        double lon = 77 + random.nextDouble();
+        double lat = 12.5 + random.nextDouble();
+        long seconds = 0;
+        for (int i = 0; i < points; i++) {
+            lon += random.nextDouble(-0.001, 0.001);
+            lat += random.nextDouble(-0.001, 0.001);
+            seconds += random.nextInt(1, 90);
+            Double speed = random.nextInt(10) == 0 ? null : random.nextDouble(0, 80);
+            locations.add(point(seconds, lon, lat, speed));
+        }
+        return locations;
+    }
+
+    private static RouteLog.LocationPoint point(long seconds, double lon, double lat, Double speed) {
+        return new RouteLog.LocationPoint(START.plusSeconds(seconds), lon, lat, speed, 0.0);
+    }
+}
@@ -0,0 +1,128 @@
+package com.routemaster.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.routemaster.model.Parcel;
+import com.routemaster.websocket.JsonBroadcaster;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of broadcasting one parcel update to /topic/parcels and its own topic through a real
+ * simple broker, comparing convertAndSend per destination with JsonBroadcaster.publish.
+ * Every subscriber session is subscribed to both destinations, so one operation delivers
+ * 2 x subscribers messages; divide the score by that for the CPU time per delivered message.
+ * Run main() from the IDE, or org.openjdk.jmh.Main with the test classpath after mvn test-compile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBroadcasterBenchmark {
+
+    private static final String PARCELS_TOPIC = "/topic/parcels";
+    private static final String PARCEL_TOPIC = "/topic/parcels/p1";
+
+    @Param({"1", "10", "100", "1000"})
+    private int subscribers;
+
+    private SimpleBrokerMessageHandler broker;
+    private SimpMessagingTemplate convertingTemplate;
+    private JsonBroadcaster jsonBroadcaster;
+    private Parcel parcel;
+
+    // Written by the outbound channel so the delivered messages are not optimised away
+    private volatile int delivered;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        ExecutorSubscribableChannel clientInbound = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel clientOutbound = new ExecutorSubscribableChannel();
+        clientOutbound.subscribe(message -> delivered++);
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+        broker = new SimpleBrokerMessageHandler(clientInbound, clientOutbound, brokerChannel, List.of("/topic"));
+        broker.start();
+
+        for (int i = 0; i < subscribers; i++) {
+            subscribe("session-" + i, PARCELS_TOPIC);
+            subscribe("session-" + i, PARCEL_TOPIC);
+        }
+
+        // The broker's Jackson converter, as used by convertAndSend before JsonBroadcaster
+        MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+        converter.setObjectMapper(objectMapper);
+        convertingTemplate = new SimpMessagingTemplate(brokerChannel);
+        convertingTemplate.setMessageConverter(converter);
+        jsonBroadcaster = new JsonBroadcaster(new SimpMessagingTemplate(brokerChannel), objectMapper);
+
+        parcel = new Parcel();
+        parcel.setId("p1");
+        parcel.setTrackingNumber("TRK-1");
+        parcel.setStatus(Parcel.ParcelStatus.IN_TRANSIT);
+        parcel.setCurrentLongitude(77.59);
+        parcel.setCurrentLatitude(12.97);
+        parcel.setLocationTimestamp(1_700_000_000_000L);
+        parcel.setRecipientName("Recipient");
+        parcel.setRecipientAddress("1 Main Street");
+        parcel.setEstimatedDelivery(LocalDateTime.of(2026, 3, 14, 18, 30));
+        parcel.setCreatedAt(LocalDateTime.of(2026, 3, 14, 8, 0));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        broker.stop();
+    }
+
+    @Benchmark
+    public int convertAndSend() {
+        convertingTemplate.convertAndSend(PARCELS_TOPIC, parcel);
+        convertingTemplate.convertAndSend(PARCEL_TOPIC, parcel);
+        return delivered;
+    }
+
+    @Benchmark
+    public int publishEncodedOnce() {
+        jsonBroadcaster.publish(parcel, PARCELS_TOPIC, PARCEL_TOPIC);
+        return delivered;
+    }
+
+    private void subscribe(String sessionId, String destination) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        headers.setSessionId(sessionId);
+        headers.setSubscriptionId(destination);
+        headers.setDestination(destination);
+        broker.handleMessage(MessageBuilder.createMessage(new byte[0], headers.getMessageHeaders()));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JsonBroadcasterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,75 @@
+package com.routemaster.benchmark;
+
+import com.routemaster.service.ParcelGridIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of nearby queries against the grid index with parcels spread over a metro-sized area
+ * (about 110 x 110 km), using the default 0.01 degree cells.
+ * Run main() from the IDE, or org.openjdk.jmh.Main with the test classpath after mvn test-compile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParcelGridIndexBenchmark {
+
+    private static final double MIN_LON = 77.0;
+    private static final double MIN_LAT = 12.5;
+    private static final double SPAN = 1.0;
+
+    @Param({"100000"})
+    private int parcels;
+
+    @Param({"1", "5"})
+    private double radiusKm;
+
+    private ParcelGridIndex index;
+    private double[] queryLons;
+    private double[] queryLats;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        index = new ParcelGridIndex(0.01);
+        for (int i = 0; i < parcels; i++) {
+            index.update("parcel-" + i, MIN_LON + random.nextDouble() * SPAN, MIN_LAT + random.nextDouble() * SPAN);
+        }
+        queryLons = new double[1024];
+        queryLats = new double[1024];
+        for (int i = 0; i < queryLons.length; i++) {
+            queryLons[i] = MIN_LON + random.nextDouble() * SPAN;
+            queryLats[i] = MIN_LAT + random.nextDouble() * SPAN;
+        }
+    }
+
+    @Benchmark
+    public List<ParcelGridIndex.Neighbour> findNearby() {
+        int i = next++ & (queryLons.length - 1);
+        return index.findNearby(queryLons[i], queryLats[i], radiusKm, 20);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ParcelGridIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,85 @@
+package com.routemaster.benchmark;
+
+import com.routemaster.batch.LegacyRouteAnalytics;
+import com.routemaster.batch.RouteAnalyticsKernel;
+import com.routemaster.model.RouteLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to compute one route's analytics with the single-pass kernel and with the four separate
+ * passes it replaced. kernel includes unpacking the points into primitive columns; kernelColumns
+ * runs the pass alone over columns unpacked in setup. Run main() from the IDE, or org.openjdk.jmh.Main with the test classpath
+ * after mvn test-compile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteAnalyticsKernelBenchmark {
+
+    @Param({"100", "2000"})
+    private int points;
+
+    private List<RouteLog.LocationPoint> locations;
+    private RouteAnalyticsKernel.Columns columns;
+
+    @Setup
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(42);
+        LocalDateTime time = LocalDateTime.of(2026, 3, 14, 8, 0);
+        double lon = 77.59;
+        double lat = 12.97;
+        locations = new ArrayList<>(points);
+        for (int i = 0; i < points; i++) {
+            lon += random.nextDouble(-0.001, 0.001);
+            lat += random.nextDouble(-0.001, 0.001);
+            time = time.plusSeconds(random.nextInt(1, 60));
+            locations.add(new RouteLog.LocationPoint(time, lon, lat, random.nextDouble(0, 80), 0.0));
+        }
+        columns = RouteAnalyticsKernel.Columns.of(locations);
+    }
+
+    @Benchmark
+    public RouteAnalyticsKernel.Result kernel() {
+        return RouteAnalyticsKernel.compute(locations);
+    }
+
+    @Benchmark
+    public RouteAnalyticsKernel.Result kernelColumns() {
+        return RouteAnalyticsKernel.compute(columns);
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) {
+        blackhole.consume(LegacyRouteAnalytics.totalDistance(locations));
+        blackhole.consume(LegacyRouteAnalytics.averageSpeed(locations));
+        blackhole.consume(LegacyRouteAnalytics.maxSpeed(locations));
+        blackhole.consume(LegacyRouteAnalytics.totalDurationMinutes(locations));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(RouteAnalyticsKernelBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,128 @@
+package com.routemaster.benchmark;
+
+import com.routemaster.model.Parcel;
+import com.routemaster.service.LocationSimulatorService.LocationUpdate;
+import com.routemaster.service.LocationWriteBehindBuffer;
+import com.routemaster.simulator.ColumnarRouteEngine;
+import com.routemaster.simulator.ObjectRouteEngine;
+import com.routemaster.simulator.RouteEngine;
+import com.routemaster.simulator.RouteSink;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput and allocation of the single-threaded part of a simulator tick: advancing every
+ * route and handing its position to the write-behind buffer. columnBuffers collects positions
+ * the way the simulator does now; updateObjects builds a LocationUpdate per route as it did
+ * before. Run with the gc profiler (-prof gc) to see gc.alloc.rate.norm per tick.
+ * Run main() from the IDE, or org.openjdk.jmh.Main with the test classpath after mvn test-compile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulatorTickBenchmark {
+
+    @Param({"100000"})
+    private int routes;
+
+    @Param({"OBJECT", "COLUMNAR"})
+    private RouteEngine.Type engineType;
+
+    private RouteEngine engine;
+    private LocationWriteBehindBuffer writeBehindBuffer;
+    private final SplittableRandom random = new SplittableRandom(42);
+    private final ColumnSink columns = new ColumnSink();
+    private final List<LocationUpdate> updates = new ArrayList<>();
+    private long timestamp;
+
+    @Setup
+    public void setUp() {
+        engine = engineType == RouteEngine.Type.COLUMNAR
+                ? new ColumnarRouteEngine(routes, 1)
+                : new ObjectRouteEngine(1);
+        SplittableRandom positions = new SplittableRandom(7);
+        for (int i = 0; i < routes; i++) {
+            engine.add("parcel-" + i, "RM-" + i,
+                    77 + positions.nextDouble(), 28 + positions.nextDouble(),
+                    77 + positions.nextDouble(), 28 + positions.nextDouble());
+        }
+        // Only enqueue is exercised, which touches neither Mongo nor the cache
+        writeBehindBuffer = new LocationWriteBehindBuffer(null, null, new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public int columnBuffers() {
+        timestamp++;
+        columns.count = 0;
+        engine.advance(0, 0.001, 0, random, columns);
+        for (int i = 0; i < columns.count; i++) {
+            writeBehindBuffer.enqueue(columns.parcelIds[i], columns.longitudes[i], columns.latitudes[i], timestamp);
+        }
+        return columns.count;
+    }
+
+    @Benchmark
+    public int updateObjects() {
+        long now = ++timestamp;
+        updates.clear();
+        engine.advance(0, 0.001, 0, random, (parcelId, trackingNumber, longitude, latitude, arrived) ->
+                updates.add(new LocationUpdate(parcelId, trackingNumber, longitude, latitude,
+                        Parcel.ParcelStatus.IN_TRANSIT.name(), now)));
+        for (LocationUpdate update : updates) {
+            writeBehindBuffer.enqueue(update.parcelId(), update.longitude(), update.latitude(), update.timestamp());
+        }
+        return updates.size();
+    }
+
+    /**
+     * Same growable column arrays as the simulator's per-shard buffers.
+     */
+    private static final class ColumnSink implements RouteSink {
+        private String[] parcelIds = new String[16];
+        private double[] longitudes = new double[16];
+        private double[] latitudes = new double[16];
+        private int count;
+
+        @Override
+        public void accept(String parcelId, String trackingNumber, double longitude, double latitude, boolean arrived) {
+            if (count == parcelIds.length) {
+                parcelIds = Arrays.copyOf(parcelIds, count * 2);
+                longitudes = Arrays.copyOf(longitudes, count * 2);
+                latitudes = Arrays.copyOf(latitudes, count * 2);
+            }
+            parcelIds[count] = parcelId;
+            longitudes[count] = longitude;
+            latitudes[count] = latitude;
+            count++;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SimulatorTickBenchmark.class.getSimpleName())
+                .addProfiler("gc")
+                .build()).run();
+    }
+}
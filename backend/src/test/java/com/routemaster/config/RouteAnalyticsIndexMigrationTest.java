@@ -0,0 +1,59 @@
+package com.routemaster.config;
+
+import com.routemaster.model.RouteAnalytics;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RouteAnalyticsIndexMigrationTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final IndexOperations indexOps = mock(IndexOperations.class);
+    private RouteAnalyticsIndexMigration migration;
+
+    @BeforeEach
+    void setUp() {
+        when(mongoTemplate.indexOps(RouteAnalytics.class)).thenReturn(indexOps);
+        migration = new RouteAnalyticsIndexMigration(mongoTemplate);
+    }
+
+    @Test
+    void duplicatesAreKeptUnlessTheDedupIsEnabled() {
+        migration.run();
+
+        verify(mongoTemplate, never()).aggregate(any(Aggregation.class), eq(RouteAnalytics.class), eq(Document.class));
+        verify(indexOps).ensureIndex(any(IndexDefinition.class));
+    }
+
+    @Test
+    void startupFailsWhenTheIndexCannotBeCreated() {
+        when(indexOps.ensureIndex(any(IndexDefinition.class))).thenThrow(new RuntimeException("E11000 duplicate key"));
+
+        assertThatThrownBy(migration::run)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("app.migrations.route-analytics-dedup.enabled");
+    }
+
+    @Test
+    void missingIndexFailsTheCheck() {
+        when(indexOps.getIndexInfo()).thenReturn(List.of(
+                new IndexInfo(List.of(), "_id_", false, false, "")));
+
+        assertThatThrownBy(migration::requireIndex).isInstanceOf(IllegalStateException.class);
+    }
+}
@@ -0,0 +1,113 @@
+package com.routemaster.security;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import java.security.Principal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class StompAuthChannelInterceptorTest {
+
+    private final JwtService jwtService = mock(JwtService.class);
+    private final UserDetailsService userDetailsService = mock(UserDetailsService.class);
+    private StompAuthChannelInterceptor interceptor;
+
+    @BeforeEach
+    void setUp() {
+        interceptor = new StompAuthChannelInterceptor(jwtService, userDetailsService);
+    }
+
+    @Test
+    void connectWithValidTokenSetsUser() {
+        UserDetails driver = user("driver1", "ROLE_DRIVER");
+        when(jwtService.extractUsername("good")).thenReturn("driver1");
+        when(userDetailsService.loadUserByUsername("driver1")).thenReturn(driver);
+        when(jwtService.isTokenValid("good", driver)).thenReturn(true);
+
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.addNativeHeader("Authorization", "Bearer good");
+        Message<byte[]> message = message(accessor, new byte[0]);
+
+        interceptor.preSend(message, null);
+
+        assertThat(accessor.getUser()).isNotNull();
+        assertThat(accessor.getUser().getName()).isEqualTo("driver1");
+    }
+
+    @Test
+    void connectWithInvalidTokenIsRejected() {
+        when(jwtService.extractUsername("bad")).thenThrow(new IllegalArgumentException("malformed"));
+
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECT);
+        accessor.addNativeHeader("Authorization", "Bearer bad");
+
+        assertThatThrownBy(() -> interceptor.preSend(message(accessor, new byte[0]), null))
+                .isInstanceOf(BadCredentialsException.class);
+    }
+
+    @Test
+    void anonymousTelemetryIsRejected() {
+        assertThatThrownBy(() -> interceptor.preSend(send(StompAuthChannelInterceptor.TELEMETRY_DESTINATION, null, 10), null))
+                .isInstanceOf(AccessDeniedException.class);
+    }
+
+    @Test
+    void viewerTelemetryIsRejected() {
+        Principal viewer = authenticated(user("viewer", "ROLE_VIEWER"));
+
+        assertThatThrownBy(() -> interceptor.preSend(send(StompAuthChannelInterceptor.TELEMETRY_DESTINATION, viewer, 10), null))
+                .isInstanceOf(AccessDeniedException.class);
+    }
+
+    @Test
+    void driverMaySendLargeTelemetryBatches() {
+        Principal driver = authenticated(user("driver1", "ROLE_DRIVER"));
+        Message<byte[]> message = send(StompAuthChannelInterceptor.TELEMETRY_DESTINATION, driver, 512 * 1024);
+
+        assertThat(interceptor.preSend(message, null)).isSameAs(message);
+    }
+
+    @Test
+    void largeFramesToOtherDestinationsAreRejected() {
+        Principal driver = authenticated(user("driver1", "ROLE_DRIVER"));
+
+        assertThatThrownBy(() -> interceptor.preSend(send("/app/other", driver, 128 * 1024), null))
+                .isInstanceOf(AccessDeniedException.class);
+    }
+
+    private static Message<byte[]> send(String destination, Principal user, int size) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.SEND);
+        accessor.setDestination(destination);
+        accessor.setUser(user);
+        return message(accessor, new byte[size]);
+    }
+
+    private static Message<byte[]> message(StompHeaderAccessor accessor, byte[] payload) {
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    private static UserDetails user(String name, String role) {
+        return User.withUsername(name).password("x").authorities(List.of(new SimpleGrantedAuthority(role))).build();
+    }
+
+    private static Principal authenticated(UserDetails user) {
+        return new UsernamePasswordAuthenticationToken(user, null, user.getAuthorities());
+    }
+}
@@ -0,0 +1,135 @@
+package com.routemaster.service;
+
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LocationWriteBehindBufferTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final ParcelCache parcelCache = mock(ParcelCache.class);
+    private LocationWriteBehindBuffer buffer;
+
+    @BeforeEach
+    void setUp() {
+        buffer = new LocationWriteBehindBuffer(mongoTemplate, parcelCache, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(buffer, "maxBatchSize", 10_000);
+    }
+
+    @Test
+    void keepsTheNewestOfSeveralPositions() {
+        BulkOperations bulkOps = bulkOps(1);
+
+        buffer.enqueue("p1", 1, 1, 200);
+        buffer.enqueue("p1", 2, 2, 100);
+
+        assertThat(buffer.flush()).isEqualTo(1);
+        assertThat(timestampOf(bulkOps)).isEqualTo(200);
+    }
+
+    @Test
+    void failedBatchIsWrittenAgainByTheNextFlush() {
+        BulkOperations failing = bulkOps(0);
+        when(failing.execute()).thenThrow(new RuntimeException("primary stepped down"));
+
+        buffer.enqueue("p1", 1, 1, 100);
+        assertThat(buffer.flush()).isZero();
+        assertThat(buffer.pendingCount()).isEqualTo(1);
+
+        BulkOperations retry = bulkOps(1);
+        assertThat(buffer.flush()).isEqualTo(1);
+        assertThat(timestampOf(retry)).isEqualTo(100);
+        assertThat(buffer.pendingCount()).isZero();
+    }
+
+    @Test
+    void newerPositionWinsOverAFailedOne() {
+        BulkOperations failing = bulkOps(0);
+        when(failing.execute()).thenAnswer(invocation -> {
+            // Arrives while the failing batch is in flight
+            buffer.enqueue("p1", 3, 3, 300);
+            throw new RuntimeException("timeout");
+        });
+
+        buffer.enqueue("p1", 1, 1, 100);
+        buffer.flush();
+
+        BulkOperations retry = bulkOps(1);
+        buffer.flush();
+        assertThat(timestampOf(retry)).isEqualTo(300);
+    }
+
+    @Test
+    void olderPositionDoesNotReplaceAFailedNewerOne() {
+        BulkOperations failing = bulkOps(0);
+        when(failing.execute()).thenAnswer(invocation -> {
+            // A delayed older fix arrives while the newer one is in flight
+            buffer.enqueue("p1", 1, 1, 100);
+            throw new RuntimeException("timeout");
+        });
+
+        buffer.enqueue("p1", 2, 2, 200);
+        buffer.flush();
+
+        BulkOperations retry = bulkOps(1);
+        buffer.flush();
+        assertThat(timestampOf(retry)).isEqualTo(200);
+    }
+
+    @Test
+    void idleSlotIsReleasedAndNotWrittenAgain() {
+        bulkOps(1);
+        buffer.enqueue("p1", 1, 1, 100);
+        buffer.flush();
+
+        BulkOperations next = bulkOps(0);
+        assertThat(buffer.flush()).isZero();
+        verify(next, never()).execute();
+
+        BulkOperations later = bulkOps(1);
+        buffer.enqueue("p1", 2, 2, 200);
+        assertThat(buffer.flush()).isEqualTo(1);
+        assertThat(timestampOf(later)).isEqualTo(200);
+    }
+
+    @Test
+    void flushMovesCachedParcelsInsteadOfEvictingThem() {
+        bulkOps(1);
+        buffer.enqueue("p1", 1, 2, 100);
+        buffer.flush();
+
+        verify(parcelCache).updateLocation("p1", 1, 2, 100);
+        verify(parcelCache, never()).invalidateAll(any());
+    }
+
+    private BulkOperations bulkOps(int matched) {
+        BulkOperations bulkOps = mock(BulkOperations.class);
+        BulkWriteResult result = mock(BulkWriteResult.class);
+        when(result.getMatchedCount()).thenReturn(matched);
+        when(bulkOps.execute()).thenReturn(result);
+        when(mongoTemplate.bulkOps(eq(BulkOperations.BulkMode.UNORDERED), any(Class.class))).thenReturn(bulkOps);
+        return bulkOps;
+    }
+
+    private static long timestampOf(BulkOperations bulkOps) {
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(bulkOps).updateOne(any(Query.class), update.capture());
+        return (Long) update.getValue().getUpdateObject().get("$set", Document.class).get("locationTimestamp");
+    }
+}
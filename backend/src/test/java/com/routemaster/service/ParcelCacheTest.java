@@ -0,0 +1,52 @@
+package com.routemaster.service;
+
+import com.routemaster.model.Parcel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParcelCacheTest {
+
+    private final ParcelCache cache = new ParcelCache(100, Duration.ofMinutes(1), new SimpleMeterRegistry());
+
+    @Test
+    void updateLocationReplacesTheCachedCopy() {
+        Parcel parcel = parcel(100L);
+        cache.put(parcel);
+
+        cache.updateLocation("p1", 3, 4, 200);
+
+        Parcel cached = cache.getById("p1", id -> Optional.empty()).orElseThrow();
+        assertThat(cached).isNotSameAs(parcel);
+        assertThat(cached.getCurrentLongitude()).isEqualTo(3);
+        assertThat(cached.getCurrentLatitude()).isEqualTo(4);
+        assertThat(cached.getLocationTimestamp()).isEqualTo(200L);
+        assertThat(cached.getTrackingNumber()).isEqualTo("TRK-1");
+        assertThat(parcel.getLocationTimestamp()).isEqualTo(100L);
+    }
+
+    @Test
+    void olderPositionDoesNotMoveTheCachedParcel() {
+        cache.put(parcel(300L));
+
+        cache.updateLocation("p1", 3, 4, 200);
+
+        Parcel cached = cache.getById("p1", id -> Optional.empty()).orElseThrow();
+        assertThat(cached.getCurrentLongitude()).isEqualTo(1);
+        assertThat(cached.getLocationTimestamp()).isEqualTo(300L);
+    }
+
+    private static Parcel parcel(long locationTimestamp) {
+        Parcel parcel = new Parcel();
+        parcel.setId("p1");
+        parcel.setTrackingNumber("TRK-1");
+        parcel.setCurrentLongitude(1.0);
+        parcel.setCurrentLatitude(2.0);
+        parcel.setLocationTimestamp(locationTimestamp);
+        return parcel;
+    }
+}
@@ -0,0 +1,100 @@
+package com.routemaster.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ParcelGridIndexTest {
+
+    private static final double LON = 77.5946;
+    private static final double LAT = 12.9716;
+
+    private final ParcelGridIndex index = new ParcelGridIndex(0.01);
+
+    @Test
+    void findNearbyReturnsNearestFirst() {
+        index.update("far", LON + 0.03, LAT);
+        index.update("near", LON + 0.001, LAT);
+        index.update("middle", LON, LAT - 0.015);
+
+        List<ParcelGridIndex.Neighbour> result = index.findNearby(LON, LAT, 10, 10);
+
+        assertThat(result).extracting(ParcelGridIndex.Neighbour::parcelId).containsExactly("near", "middle", "far");
+        assertThat(result).extracting(ParcelGridIndex.Neighbour::distanceKm).isSorted();
+    }
+
+    @Test
+    void findNearbyKeepsOnlyTheNearestUpToLimit() {
+        for (int i = 1; i <= 50; i++) {
+            // Inserted far to near so the heap has to evict
+            index.update("p" + i, LON + (51 - i) * 0.0005, LAT);
+        }
+
+        List<ParcelGridIndex.Neighbour> result = index.findNearby(LON, LAT, 10, 3);
+
+        assertThat(result).extracting(ParcelGridIndex.Neighbour::parcelId).containsExactly("p50", "p49", "p48");
+    }
+
+    @Test
+    void findNearbyReturnsNothingForNonPositiveLimit() {
+        index.update("p1", LON, LAT);
+
+        assertThat(index.findNearby(LON, LAT, 10, 0)).isEmpty();
+        assertThat(index.findNearby(LON, LAT, 10, -1)).isEmpty();
+    }
+
+    @Test
+    void findNearbyIncludesAParcelExactlyOnTheRadius() {
+        index.update("edge", LON + 0.02, LAT + 0.01);
+        double distance = index.findNearby(LON, LAT, 100, 1).get(0).distanceKm();
+
+        assertThat(index.findNearby(LON, LAT, distance, 1)).extracting(ParcelGridIndex.Neighbour::parcelId)
+                .containsExactly("edge");
+        assertThat(index.findNearby(LON, LAT, distance - 1e-9, 1)).isEmpty();
+    }
+
+    @Test
+    void findNearbyScansNeighbouringCells() {
+        // Query point just below a cell border, parcel just above it
+        index.update("across", 77.6001, LAT);
+
+        assertThat(index.findNearby(77.5999, LAT, 0.1, 1)).extracting(ParcelGridIndex.Neighbour::parcelId)
+                .containsExactly("across");
+    }
+
+    @Test
+    void removedParcelIsNoLongerFound() {
+        index.update("gone", LON, LAT);
+        index.update("kept", LON + 0.001, LAT);
+
+        index.remove("gone");
+
+        assertThat(index.findNearby(LON, LAT, 1, 10)).extracting(ParcelGridIndex.Neighbour::parcelId)
+                .containsExactly("kept");
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    @Test
+    void parcelMovedToAnotherCellIsFoundOnlyAtItsNewPosition() {
+        index.update("moving", LON, LAT);
+
+        index.update("moving", LON + 0.5, LAT + 0.5);
+
+        assertThat(index.findNearby(LON, LAT, 1, 10)).isEmpty();
+        assertThat(index.findNearby(LON + 0.5, LAT + 0.5, 1, 10)).extracting(ParcelGridIndex.Neighbour::parcelId)
+                .containsExactly("moving");
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    @Test
+    void parcelMovedWithinItsCellReportsTheNewDistance() {
+        index.update("moving", LON + 0.004, LAT);
+        index.update("moving", LON + 0.001, LAT);
+
+        ParcelGridIndex.Neighbour neighbour = index.findNearby(LON, LAT, 1, 10).get(0);
+
+        assertThat(neighbour.distanceKm()).isLessThan(0.2);
+    }
+}
@@ -0,0 +1,96 @@
+package com.routemaster.service;
+
+import com.routemaster.model.Parcel;
+import com.routemaster.repository.ParcelRepository;
+import com.routemaster.websocket.JsonBroadcaster;
+import com.routemaster.websocket.LocationBroadcaster;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class ParcelServiceTest {
+
+    private final ParcelRepository parcelRepository = mock(ParcelRepository.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final LocationSimulatorService simulatorService = mock(LocationSimulatorService.class);
+    private ParcelService parcelService;
+
+    @BeforeEach
+    void setUp() {
+        parcelService = new ParcelService(parcelRepository, mongoTemplate, mock(JsonBroadcaster.class),
+                mock(ParcelGridIndex.class), mock(LocationBroadcaster.class), mock(ParcelCache.class),
+                mock(ParcelStatusCounters.class), mock(ParcelTrackBuffer.class), simulatorService);
+        ReflectionTestUtils.setField(parcelService, "maxClockSkew", 60_000L);
+    }
+
+    @Test
+    void rejectsAFixBeyondTheClockSkew() {
+        long future = System.currentTimeMillis() + 3_600_000;
+
+        assertThat(parcelService.updateParcelLocation("p1", 1, 1, future))
+                .isEqualTo(ParcelService.LocationWriteResult.FUTURE);
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void updateKeepsTheStoredFixTimestamp() {
+        Parcel existing = new Parcel();
+        existing.setId("p1");
+        existing.setLocationTimestamp(500L);
+        when(parcelRepository.findById("p1")).thenReturn(Optional.of(existing));
+        when(parcelRepository.save(any(Parcel.class))).thenAnswer(invocation -> invocation.getArgument(0));
+
+        Parcel updated = parcelService.updateParcel("p1", new Parcel());
+
+        assertThat(updated.getLocationTimestamp()).isEqualTo(500L);
+    }
+
+    @Test
+    void polygonWithAMissingPointIsRejected() {
+        List<List<Double>> ring = Arrays.asList(List.of(0.0, 0.0), null, List.of(1.0, 1.0), Arrays.asList(1.0, null));
+
+        assertThatThrownBy(() -> parcelService.findParcelsWithinPolygon(ring, 10))
+                .isInstanceOf(IllegalArgumentException.class);
+        verifyNoInteractions(mongoTemplate);
+    }
+
+    @Test
+    void statusChangeOutOfTransitStopsTheSimulation() {
+        Parcel previous = new Parcel();
+        previous.setId("p1");
+        previous.setStatus(Parcel.ParcelStatus.IN_TRANSIT);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(Parcel.class))).thenReturn(previous);
+
+        parcelService.updateParcelStatus("p1", Parcel.ParcelStatus.IN_TRANSIT);
+        verify(simulatorService, never()).stopSimulating("p1");
+
+        parcelService.updateParcelStatus("p1", Parcel.ParcelStatus.FAILED);
+        verify(simulatorService).stopSimulating("p1");
+    }
+
+    @Test
+    void deleteStopsTheSimulation() {
+        parcelService.deleteParcel("p1");
+
+        verify(simulatorService).stopSimulating("p1");
+    }
+}
@@ -0,0 +1,66 @@
+package com.routemaster.service;
+
+import com.routemaster.model.Parcel;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ParcelStatusCountersTest {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final ParcelStatusCounters counters = new ParcelStatusCounters(mongoTemplate);
+
+    @Test
+    void reconcileSetsCountsFromMongo() {
+        counters.increment(Parcel.ParcelStatus.PENDING);
+        aggregationReturns(List.of(row("IN_TRANSIT", 5), row("DELIVERED", 2)));
+
+        counters.reconcile();
+
+        assertThat(counters.get(Parcel.ParcelStatus.PENDING)).isZero();
+        assertThat(counters.get(Parcel.ParcelStatus.IN_TRANSIT)).isEqualTo(5);
+        assertThat(counters.get(Parcel.ParcelStatus.DELIVERED)).isEqualTo(2);
+    }
+
+    @Test
+    void reconcileKeepsTransitionsRecordedDuringTheAggregation() {
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(Parcel.class), eq(Document.class))).thenAnswer(invocation -> {
+            // Recorded after the aggregation read the collection
+            counters.transition(Parcel.ParcelStatus.IN_TRANSIT, Parcel.ParcelStatus.DELIVERED, 1);
+            return new AggregationResults<>(List.of(row("IN_TRANSIT", 5)), new Document());
+        });
+
+        counters.reconcile();
+
+        assertThat(counters.get(Parcel.ParcelStatus.IN_TRANSIT)).isEqualTo(4);
+        assertThat(counters.get(Parcel.ParcelStatus.DELIVERED)).isEqualTo(1);
+    }
+
+    @Test
+    void reconcileSkipsUnknownStatuses() {
+        aggregationReturns(List.of(row("LOST_IN_SPACE", 3), row("PENDING", 1)));
+
+        counters.seed();
+
+        assertThat(counters.get(Parcel.ParcelStatus.PENDING)).isEqualTo(1);
+    }
+
+    private void aggregationReturns(List<Document> rows) {
+        when(mongoTemplate.aggregate(any(Aggregation.class), eq(Parcel.class), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(rows, new Document()));
+    }
+
+    private static Document row(String status, long count) {
+        return new Document("_id", status).append("count", count);
+    }
+}
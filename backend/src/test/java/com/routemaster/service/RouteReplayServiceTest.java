@@ -0,0 +1,94 @@
+package com.routemaster.service;
+
+import com.routemaster.model.RouteLog;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RouteReplayServiceTest {
+
+    private static final LocalDate DATE = LocalDate.of(2026, 3, 14);
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private RouteReplayService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new RouteReplayService(mongoTemplate, 100, Duration.ofMinutes(10), 1.0, new SimpleMeterRegistry());
+        when(mongoTemplate.stream(any(Query.class), eq(RouteLog.class)))
+                .thenAnswer(invocation -> Stream.of(idOnly("r1"), idOnly("r2")));
+        when(mongoTemplate.find(any(Query.class), eq(RouteLog.class)))
+                .thenReturn(List.of(routeLog("r2"), routeLog("r1")));
+    }
+
+    @Test
+    void streamDayKeepsCursorOrderAndLoadsMissingLogsOnce() {
+        List<RouteReplayService.RouteReplay> replays = streamDay();
+
+        assertThat(replays).extracting(RouteReplayService.RouteReplay::routeId).containsExactly("r1", "r2");
+        assertThat(replays.get(0).originalPoints()).isEqualTo(3);
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(RouteLog.class));
+    }
+
+    @Test
+    void streamDayServesCachedReplaysWithoutLoadingLogs() {
+        streamDay();
+
+        List<RouteReplayService.RouteReplay> replays = streamDay();
+
+        assertThat(replays).extracting(RouteReplayService.RouteReplay::routeId).containsExactly("r1", "r2");
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(RouteLog.class));
+    }
+
+    @Test
+    void streamDayOnlyReadsRouteIdsFromTheCursor() {
+        streamDay();
+
+        verify(mongoTemplate).stream(argThat(query ->
+                query.getFieldsObject().keySet().equals(Set.of("routeId"))), eq(RouteLog.class));
+        verify(mongoTemplate, never()).findOne(any(Query.class), eq(RouteLog.class));
+    }
+
+    private List<RouteReplayService.RouteReplay> streamDay() {
+        try (Stream<RouteReplayService.RouteReplay> replays =
+                     service.streamDay(DATE, null, 12, RouteReplayService.Method.DOUGLAS_PEUCKER, 60)) {
+            return replays.toList();
+        }
+    }
+
+    private static RouteLog idOnly(String routeId) {
+        RouteLog routeLog = new RouteLog();
+        routeLog.setRouteId(routeId);
+        return routeLog;
+    }
+
+    private static RouteLog routeLog(String routeId) {
+        RouteLog routeLog = idOnly(routeId);
+        routeLog.setDate(DATE);
+        LocalDateTime start = DATE.atTime(8, 0);
+        routeLog.setLocations(List.of(
+                new RouteLog.LocationPoint(start, 77.59, 12.97, 20.0, 0.0),
+                new RouteLog.LocationPoint(start.plusMinutes(1), 77.60, 12.98, 20.0, 0.0),
+                new RouteLog.LocationPoint(start.plusMinutes(2), 77.61, 12.97, 20.0, 0.0)));
+        return routeLog;
+    }
+}
@@ -0,0 +1,41 @@
+package com.routemaster.service;
+
+import com.routemaster.websocket.LocationBroadcaster;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class TelemetryIngestServiceTest {
+
+    private TelemetryIngestService ingestService;
+
+    @BeforeEach
+    void setUp() {
+        ingestService = new TelemetryIngestService(mock(MongoTemplate.class), mock(ParcelCache.class),
+                mock(ParcelGridIndex.class), mock(ParcelTrackBuffer.class), mock(LocationBroadcaster.class),
+                10, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(ingestService, "maxClockSkew", 60_000L);
+    }
+
+    @Test
+    void fixBeyondTheClockSkewIsInvalid() {
+        String parcelId = new ObjectId().toHexString();
+        long now = System.currentTimeMillis();
+
+        TelemetryIngestService.TelemetryAck ack = ingestService.submit(List.of(
+                new TelemetryIngestService.TelemetryFix(parcelId, 1, 1, now + 3_600_000),
+                new TelemetryIngestService.TelemetryFix(parcelId, 1, 1, now + 1_000),
+                new TelemetryIngestService.TelemetryFix(parcelId, 1, 1, null)));
+
+        assertThat(ack.invalid()).isEqualTo(1);
+        assertThat(ack.accepted()).isEqualTo(2);
+    }
+}
@@ -0,0 +1,45 @@
+package com.routemaster.websocket;
+
+import com.routemaster.service.LocationSimulatorService.LocationUpdate;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BinaryLocationEncoderTest {
+
+    private static final List<LocationUpdate> UPDATES = List.of(
+            new LocationUpdate("p1", "TRK-1", 77.59, 12.97, "IN_TRANSIT", 1_700_000_000_000L));
+
+    private final BinaryLocationEncoder encoder = new BinaryLocationEncoder(1000);
+
+    @Test
+    void repeatUpdateReferencesTheDictionary() {
+        byte[] first = encode();
+        byte[] second = encode();
+
+        assertThat(first[1]).isZero();
+        assertThat(second[1]).isZero();
+        assertThat(second.length).isLessThan(first.length);
+    }
+
+    @Test
+    void resetFlagsTheNextFrameAndResendsEntries() {
+        byte[] first = encode();
+        encoder.reset();
+
+        byte[] afterReset = encode();
+
+        assertThat(afterReset[1]).isEqualTo((byte) 1);
+        assertThat(afterReset).hasSameSizeAs(first);
+        assertThat(encode()[1]).isZero();
+    }
+
+    private byte[] encode() {
+        AtomicReference<byte[]> frame = new AtomicReference<>();
+        encoder.encodeAndSend(UPDATES, frame::set);
+        return frame.get();
+    }
+}
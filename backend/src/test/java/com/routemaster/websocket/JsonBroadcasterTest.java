@@ -0,0 +1,117 @@
+package com.routemaster.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.routemaster.model.Parcel;
+import com.routemaster.service.LocationSimulatorService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.util.MimeTypeUtils;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class JsonBroadcasterTest {
+
+    // Built like the ObjectMapper Spring Boot injects and the broker's Jackson converter uses
+    private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+    private final MappingJackson2MessageConverter converter = new MappingJackson2MessageConverter();
+    private JsonBroadcaster broadcaster;
+
+    @BeforeEach
+    void setUp() {
+        converter.setObjectMapper(objectMapper);
+        broadcaster = new JsonBroadcaster(messagingTemplate, objectMapper);
+    }
+
+    @Test
+    void encodedParcelMatchesTheConverter() throws Exception {
+        Parcel parcel = parcel();
+
+        byte[] encoded = broadcaster.encode(parcel);
+
+        assertThat(objectMapper.readTree(encoded)).isEqualTo(objectMapper.readTree(converted(parcel)));
+        assertThat(encoded).isEqualTo(converted(parcel));
+    }
+
+    @Test
+    void arrayOfEncodedElementsMatchesTheConvertedList() throws Exception {
+        List<LocationSimulatorService.LocationUpdate> updates = List.of(
+                new LocationSimulatorService.LocationUpdate("p1", "TRK-1", 77.59, 12.97, "IN_TRANSIT", 1_700_000_000_000L),
+                new LocationSimulatorService.LocationUpdate("p2", "TRK-2", -0.5, 51.5, null, 1_700_000_000_500L));
+
+        byte[] array = JsonBroadcaster.array(updates.stream().map(broadcaster::encode).toList());
+
+        assertThat(objectMapper.readTree(array)).isEqualTo(objectMapper.readTree(converted(updates)));
+    }
+
+    @Test
+    void arrayOfNoElementsIsEmptyJsonArray() {
+        assertThat(new String(JsonBroadcaster.array(List.of()))).isEqualTo("[]");
+    }
+
+    @Test
+    void publishSendsTheSameBytesToEveryDestination() throws Exception {
+        Parcel parcel = parcel();
+
+        broadcaster.publish(parcel, "/topic/parcels", "/topic/parcels/p1");
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Message<byte[]>> first = ArgumentCaptor.forClass(Message.class);
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Message<byte[]>> second = ArgumentCaptor.forClass(Message.class);
+        verify(messagingTemplate).send(eq("/topic/parcels"), first.capture());
+        verify(messagingTemplate).send(eq("/topic/parcels/p1"), second.capture());
+        assertThat(second.getValue().getPayload()).isSameAs(first.getValue().getPayload());
+        assertThat(objectMapper.readTree(first.getValue().getPayload()))
+                .isEqualTo(objectMapper.readTree(converted(parcel)));
+        assertThat(first.getValue().getHeaders().get(MessageHeaders.CONTENT_TYPE))
+                .isEqualTo(MimeTypeUtils.APPLICATION_JSON);
+    }
+
+    @Test
+    void sendToSessionAddressesTheSessionsUserDestination() {
+        when(messagingTemplate.getUserDestinationPrefix()).thenReturn("/user/");
+        byte[] json = broadcaster.encode(List.of());
+
+        broadcaster.sendToSession("s1", "/queue/locations", json);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Message<byte[]>> message = ArgumentCaptor.forClass(Message.class);
+        verify(messagingTemplate, times(1)).send(eq("/user/s1/queue/locations"), message.capture());
+        assertThat(SimpMessageHeaderAccessor.getSessionId(message.getValue().getHeaders())).isEqualTo("s1");
+        assertThat(message.getValue().getPayload()).isSameAs(json);
+    }
+
+    private byte[] converted(Object payload) {
+        return (byte[]) converter.toMessage(payload, null).getPayload();
+    }
+
+    private static Parcel parcel() {
+        Parcel parcel = new Parcel();
+        parcel.setId("p1");
+        parcel.setTrackingNumber("TRK-1");
+        parcel.setStatus(Parcel.ParcelStatus.IN_TRANSIT);
+        parcel.setCurrentLongitude(77.59);
+        parcel.setCurrentLatitude(12.97);
+        parcel.setLocationTimestamp(1_700_000_000_000L);
+        parcel.setWeight(2.5);
+        parcel.setEstimatedDelivery(LocalDateTime.of(2026, 3, 14, 18, 30));
+        parcel.setCreatedAt(LocalDateTime.of(2026, 3, 14, 8, 0, 12, 345_000_000));
+        return parcel;
+    }
+}
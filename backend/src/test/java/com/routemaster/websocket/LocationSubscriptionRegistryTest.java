@@ -0,0 +1,45 @@
+package com.routemaster.websocket;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocationSubscriptionRegistryTest {
+
+    private final LocationSubscriptionRegistry registry = new LocationSubscriptionRegistry();
+
+    @Test
+    void exactSubscriptionMatchesOnlyItsDestination() {
+        registry.onSubscribe(new SessionSubscribeEvent(this, message(StompCommand.SUBSCRIBE, "/topic/locations/p1")));
+
+        assertThat(registry.hasSubscribers("/topic/locations/p1")).isTrue();
+        assertThat(registry.hasSubscribers("/topic/locations/p2")).isFalse();
+    }
+
+    @Test
+    void patternSubscriptionMatchesLikeTheBroker() {
+        registry.onSubscribe(new SessionSubscribeEvent(this, message(StompCommand.SUBSCRIBE, "/topic/locations/*")));
+
+        assertThat(registry.hasSubscribers("/topic/locations/p1")).isTrue();
+        assertThat(registry.hasSubscribers("/topic/parcels/p1")).isFalse();
+
+        registry.onUnsubscribe(new SessionUnsubscribeEvent(this, message(StompCommand.UNSUBSCRIBE, null)));
+        assertThat(registry.hasSubscribers("/topic/locations/p1")).isFalse();
+    }
+
+    private static Message<byte[]> message(StompCommand command, String destination) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        accessor.setSessionId("s1");
+        accessor.setSubscriptionId("sub-1");
+        if (destination != null) {
+            accessor.setDestination(destination);
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -71,9 +71,12 @@ export const useParcelStore = defineStore('parcel', {
 
         connectWebSocket() {
             const socket = new SockJS('/ws')
+            // Viewing needs no token; sending telemetry requires a DRIVER or ADMIN one
+            const token = localStorage.getItem('token')
 
             this.stompClient = new Client({
                 webSocketFactory: () => socket,
+                connectHeaders: token ? { Authorization: `Bearer ${token}` } : {},
                 debug: (str) => console.log('STOMP:', str),
                 reconnectDelay: 5000,
                 heartbeatIncoming: 4000,
@@ -83,10 +86,14 @@ export const useParcelStore = defineStore('parcel', {
                     console.log('WebSocket connected')
                     this.connected = true
 
-                    // Subscribe to all location updates
+                    // Subscribe to all location updates (one update, or one array per tick in batch frame mode)
                     this.stompClient.subscribe('/topic/locations', (message) => {
-                        const update = JSON.parse(message.body)
-                        this.handleLocationUpdate(update)
+                        const payload = JSON.parse(message.body)
+                        if (Array.isArray(payload)) {
+                            payload.forEach(update => this.handleLocationUpdate(update))
+                        } else {
+                            this.handleLocationUpdate(payload)
+                        }
                     })
 
                     // Subscribe to parcel updates
@@ -15,6 +15,7 @@ CREATE TABLE IF NOT EXISTS route_analytics (
     deliveries_failed INTEGER,
     fuel_efficiency DOUBLE PRECISION,
     total_duration_minutes BIGINT,
+    moving_duration_minutes BIGINT,
     processed_at TIMESTAMP,
     notes VARCHAR(500),
     CONSTRAINT uk_route_date UNIQUE (route_id, date)